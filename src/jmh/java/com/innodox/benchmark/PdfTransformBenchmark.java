@@ -0,0 +1,97 @@
+package com.innodox.benchmark;
+
+import com.innodox.manipulate.PdfTransform;
+import com.innodox.model.PdfAttachment;
+import com.itextpdf.text.DocumentException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the {@link PdfTransform} operations. Run with {@code gradle jmh -Pjmh.args=PdfTransformBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PdfTransformBenchmark {
+
+    @Param({"SMALL", "MEDIUM", "HUGE"})
+    public SyntheticPdfs.Size size;
+
+    /**
+     * The number of documents of the batch operations and of attachments added by {@link #addAttachments()}.
+     */
+    @Param({"4"})
+    public int batch;
+
+    private byte[] document;
+    private byte[] imageDocument;
+    private List<byte[]> documents;
+    private List<PdfAttachment> attachments;
+
+    @Setup
+    public void setUp() {
+        document = SyntheticPdfs.text(size.getPages());
+        imageDocument = SyntheticPdfs.images(size.getPages());
+        documents = new ArrayList<>();
+        attachments = new ArrayList<>();
+        for (int i = 0; i < batch; i++) {
+            documents.add(document);
+            String name = "attachment-" + i + ".xml";
+            attachments.add(PdfAttachment.builder().data(SyntheticPdfs.xml(64 * 1024)).filename(name).description(name).build());
+        }
+    }
+
+    @Benchmark
+    public byte[] merge() {
+        return PdfTransform.get(document).addAll(documents.subList(1, documents.size())).merge();
+    }
+
+    @Benchmark
+    public byte[] mergeAndWatermark() {
+        return PdfTransform.get(document).addAll(documents.subList(1, documents.size())).mergeAndWatermark();
+    }
+
+    @Benchmark
+    public List<byte[]> watermarkAll() {
+        return PdfTransform.get(document).addAll(documents.subList(1, documents.size())).watermarkAll();
+    }
+
+    @Benchmark
+    public List<byte[]> watermarkAllInParallel() {
+        return PdfTransform.get(document).addAll(documents.subList(1, documents.size()))
+                .withParallelism(batch)
+                .watermarkAll();
+    }
+
+    @Benchmark
+    public byte[] addAttachments() throws IOException, DocumentException {
+        return PdfTransform.get(document).addAttachments(document, attachments);
+    }
+
+    @Benchmark
+    public List<byte[]> getBarcodeFromPdf() {
+        return PdfTransform.get(imageDocument).getBarcodeFromPdf();
+    }
+
+    @Benchmark
+    public List<byte[]> getBarcodeFromFirstPage() {
+        return PdfTransform.get(imageDocument).getBarcodeFromPdf("1");
+    }
+}
@@ -0,0 +1,71 @@
+package com.innodox.benchmark;
+
+import com.innodox.model.folding.FoldingLineSet;
+import com.innodox.util.PdfUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the {@link PdfUtil} operations. Run with {@code gradle jmh -Pjmh.args=PdfUtilBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PdfUtilBenchmark {
+
+    @Param({"SMALL", "MEDIUM", "HUGE"})
+    public SyntheticPdfs.Size size;
+
+    @Param({"10"})
+    public int attachments;
+
+    private byte[] document;
+    private byte[] attachmentDocument;
+
+    @Setup
+    public void setUp() {
+        document = SyntheticPdfs.text(size.getPages());
+        attachmentDocument = SyntheticPdfs.attachments(attachments, 64 * 1024);
+    }
+
+    @Benchmark
+    public int getPageCount() {
+        return PdfUtil.getPageCount(document);
+    }
+
+    @Benchmark
+    public byte[] getPage() {
+        return PdfUtil.getPage(document, (size.getPages() + 1) / 2);
+    }
+
+    @Benchmark
+    public byte[] getPagePartially() {
+        return PdfUtil.getPage(document, (size.getPages() + 1) / 2, true);
+    }
+
+    @Benchmark
+    public Map<String, byte[]> getPdfAttachments() throws IOException {
+        return PdfUtil.getPdfAttachments(attachmentDocument, "xml");
+    }
+
+    @Benchmark
+    public byte[] addFoldingLines() {
+        return PdfUtil.addFoldingLines(document, FoldingLineSet.DL);
+    }
+}
@@ -0,0 +1,117 @@
+package com.innodox.benchmark;
+
+import com.innodox.document.init.AbstractPdfDocumentProcessorPdf;
+import com.itextpdf.text.DocumentException;
+import com.itextpdf.text.Image;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of {@link AbstractPdfDocumentProcessorPdf#postProcess(byte[])}, with the header and footer read from an
+ * editable file through the image cache. Run with {@code gradle jmh -Pjmh.args=PostProcessBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PostProcessBenchmark {
+
+    @Param({"SMALL", "MEDIUM", "HUGE"})
+    public SyntheticPdfs.Size size;
+
+    /**
+     * The pages that get the header and the footer.
+     */
+    @Param({"1", "1-"})
+    public String pages;
+
+    private byte[] document;
+    private Path logo;
+    private AbstractPdfDocumentProcessorPdf processor;
+
+    @Setup
+    public void setUp() throws IOException {
+        document = SyntheticPdfs.text(size.getPages());
+        logo = Files.createTempFile("benchmark-logo", ".png");
+        Files.write(logo, SyntheticPdfs.logo());
+        processor = new LogoProcessor(logo.toString(), pages);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(logo);
+    }
+
+    @Benchmark
+    public byte[] postProcess() {
+        return processor.postProcess(document);
+    }
+
+    private static class LogoProcessor extends AbstractPdfDocumentProcessorPdf {
+        private final String logo;
+        private final String pages;
+
+        private LogoProcessor(String logo, String pages) {
+            this.logo = logo;
+            this.pages = pages;
+        }
+
+        @Override
+        protected InputStream getHeaderStream() {
+            return getFileStream(true, logo, null);
+        }
+
+        @Override
+        protected InputStream getFooterStream() {
+            return getFileStream(true, logo, null);
+        }
+
+        @Override
+        protected Image getHeaderImage() throws IOException, DocumentException {
+            return getFileImage(true, logo, null);
+        }
+
+        @Override
+        protected Image getFooterImage() throws IOException, DocumentException {
+            return getFileImage(true, logo, null);
+        }
+
+        @Override
+        protected String getHeaderPages() {
+            return pages;
+        }
+
+        @Override
+        protected String getFooterPages() {
+            return pages;
+        }
+
+        @Override
+        protected boolean isHeaderEnabled() {
+            return true;
+        }
+
+        @Override
+        protected boolean isFooterEnabled() {
+            return true;
+        }
+    }
+}
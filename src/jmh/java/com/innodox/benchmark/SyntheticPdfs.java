@@ -0,0 +1,171 @@
+package com.innodox.benchmark;
+
+import com.itextpdf.text.Document;
+import com.itextpdf.text.DocumentException;
+import com.itextpdf.text.Image;
+import com.itextpdf.text.PageSize;
+import com.itextpdf.text.Paragraph;
+import com.itextpdf.text.pdf.PdfFileSpecification;
+import com.itextpdf.text.pdf.PdfWriter;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * Generates the documents of the benchmarks. Every generator uses a fixed seed, so the content of a document only
+ * depends on its parameters.
+ */
+public final class SyntheticPdfs {
+
+    /**
+     * Document sizes in pages.
+     */
+    public enum Size {
+        SMALL(1),
+        MEDIUM(50),
+        HUGE(2000);
+
+        private final int pages;
+
+        Size(int pages) {
+            this.pages = pages;
+        }
+
+        public int getPages() {
+            return pages;
+        }
+    }
+
+    private static final long SEED = 20240612L;
+
+    private SyntheticPdfs() {
+    }
+
+    /**
+     * @param pages the number of pages
+     * @return a document with a few paragraphs of text on every page
+     */
+    public static byte[] text(int pages) {
+        Random random = new Random(SEED);
+        return write(pages, (document, writer, page) -> {
+            for (int i = 0; i < 20; i++) {
+                document.add(new Paragraph("Page " + page + " line " + i + " " + Long.toHexString(random.nextLong())));
+            }
+        });
+    }
+
+    /**
+     * @param pages the number of pages
+     * @return a document with a distinct scanned-like JPEG image on every page
+     */
+    public static byte[] images(int pages) {
+        Random random = new Random(SEED);
+        return write(pages, (document, writer, page) -> {
+            Image image = Image.getInstance(jpeg(random, 600, 300));
+            image.scaleToFit(500, 250);
+            document.add(image);
+        });
+    }
+
+    /**
+     * @param attachments the number of embedded files
+     * @param attachmentSize the size of every embedded file in bytes
+     * @return a single page document with XML attachments
+     */
+    public static byte[] attachments(int attachments, int attachmentSize) {
+        Random random = new Random(SEED);
+        return write(1, (document, writer, page) -> {
+            document.add(new Paragraph("Document with " + attachments + " attachments"));
+            for (int i = 0; i < attachments; i++) {
+                String name = "attachment-" + i + ".xml";
+                PdfFileSpecification fs = PdfFileSpecification.fileEmbedded(writer, null, name, xml(random, attachmentSize));
+                writer.addFileAttachment(name, fs);
+            }
+        });
+    }
+
+    /**
+     * @param size the size of the file in bytes
+     * @return a deterministic XML file
+     */
+    public static byte[] xml(int size) {
+        return xml(new Random(SEED), size);
+    }
+
+    private static byte[] xml(Random random, int size) {
+        StringBuilder xml = new StringBuilder("<invoice>");
+        while (xml.length() < size - 10) {
+            xml.append("<line>").append(random.nextInt(100000)).append("</line>");
+        }
+        return xml.append("</invoice>").toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return a PNG logo to be used as header or footer
+     */
+    public static byte[] logo() {
+        BufferedImage image = new BufferedImage(400, 80, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setColor(Color.WHITE);
+        graphics.fillRect(0, 0, 400, 80);
+        graphics.setColor(new Color(0, 70, 140));
+        graphics.fillRect(10, 10, 60, 60);
+        graphics.dispose();
+        return encode(image, "png");
+    }
+
+    private static byte[] jpeg(Random random, int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setColor(Color.WHITE);
+        graphics.fillRect(0, 0, width, height);
+        graphics.setColor(Color.BLACK);
+        // barcode-like bars with some noise
+        for (int x = 20; x < width - 20; x += 2 + random.nextInt(4)) {
+            graphics.fillRect(x, 40, 1 + random.nextInt(3), height - 80);
+        }
+        graphics.dispose();
+        return encode(image, "jpg");
+    }
+
+    private static byte[] encode(BufferedImage image, String format) {
+        try {
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            ImageIO.write(image, format, outputStream);
+            return outputStream.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @FunctionalInterface
+    private interface PageWriter {
+        void write(Document document, PdfWriter writer, int page) throws IOException, DocumentException;
+    }
+
+    private static byte[] write(int pages, PageWriter pageWriter) {
+        Document document = new Document(PageSize.A4);
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        try {
+            PdfWriter writer = PdfWriter.getInstance(document, outputStream);
+            document.open();
+            for (int page = 1; page <= pages; page++) {
+                if (page > 1) {
+                    document.newPage();
+                }
+                pageWriter.write(document, writer, page);
+            }
+            document.close();
+        } catch (IOException | DocumentException e) {
+            throw new IllegalStateException("Could not generate benchmark document", e);
+        }
+        return outputStream.toByteArray();
+    }
+}
@@ -2,23 +2,61 @@ package com.innodox.document.init;
 
 
 import com.innodox.exception.InvalidFileContentException;
+import com.innodox.metrics.Measurement;
+import com.innodox.metrics.PdfPhase;
+import com.innodox.util.IncrementalUpdate;
+import com.innodox.util.OutputProfile;
+import com.innodox.util.PdfResultCache;
 import com.itextpdf.text.DocumentException;
 import com.itextpdf.text.Image;
 
+import com.itextpdf.text.Rectangle;
 import com.itextpdf.text.pdf.PdfContentByte;
 import com.itextpdf.text.pdf.PdfDocument;
 import com.itextpdf.text.pdf.PdfReader;
 import com.itextpdf.text.pdf.PdfStamper;
+import com.itextpdf.text.pdf.SequenceList;
 import org.apache.commons.io.IOUtils;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.*;
+import java.net.URL;
+import java.util.LinkedHashSet;
+import java.util.Set;
 
-public abstract class AbstractPdfDocumentProcessorPdf implements PdfPreProcessor, PdfPostProcessor  {
+public abstract class AbstractPdfDocumentProcessorPdf implements PdfPreProcessor, PdfPostProcessor, PdfStamperProcessor  {
 
     private static final Logger log=LoggerFactory.getLogger(AbstractPdfDocumentProcessorPdf.class);
+
+    private static final ImageCache IMAGE_CACHE = new ImageCache(32);
+
+    /**
+     * Whether a processor class still overrides the deprecated {@link #buildHeader(PdfContentByte, PdfDocument)}.
+     */
+    private static final ClassValue<Boolean> LEGACY_HEADER = new ClassValue<Boolean>() {
+        @Override
+        protected Boolean computeValue(Class<?> type) {
+            return overridesLegacyHook(type, "buildHeader");
+        }
+    };
+
+    /**
+     * Whether a processor class still overrides the deprecated {@link #buildFooter(PdfContentByte, PdfDocument)}.
+     */
+    private static final ClassValue<Boolean> LEGACY_FOOTER = new ClassValue<Boolean>() {
+        @Override
+        protected Boolean computeValue(Class<?> type) {
+            return overridesLegacyHook(type, "buildFooter");
+        }
+    };
+
+    /**
+     * The page margin the header and footer are aligned to, the default margin of an iText document.
+     */
+    private static final float MARGIN = 36f;
+
     protected abstract InputStream getHeaderStream();
 
     protected abstract InputStream getFooterStream();
@@ -32,61 +70,258 @@ public abstract class AbstractPdfDocumentProcessorPdf implements PdfPreProcessor
         return docxData;
     }
 
-    @Override
-    public byte[] postProcess(byte[] pdf) {
-        try (ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream()) {
-            PdfStamper pdfStamper = new PdfStamper(new PdfReader(pdf), byteArrayOutputStream);
-            PdfContentByte overContent = pdfStamper.getOverContent(1);
-            PdfDocument pdfDocument = overContent.getPdfDocument();
+    /**
+     * Returns the pages that get the header, in the syntax of {@link SequenceList}, for example "1-" for every page or
+     * "odd". Only the first page by default.
+     *
+     * @return the pages that get the header
+     */
+    protected String getHeaderPages() {
+        return "1";
+    }
 
-            if(isHeaderEnabled()) {
-                buildHeader(overContent, pdfDocument);
-            }
-            if(isFooterEnabled()) {
-                buildFooter(overContent, pdfDocument);
-            }
+    /**
+     * Returns the pages that get the footer, in the syntax of {@link SequenceList}, for example "1-" for every page or
+     * "odd". Only the first page by default.
+     *
+     * @return the pages that get the footer
+     */
+    protected String getFooterPages() {
+        return "1";
+    }
+
+    /**
+     * Returns the profile the processed document is written with by {@link #postProcess(byte[])}.
+     *
+     * @return the output profile, {@link OutputProfile#getDefault()} by default
+     */
+    protected OutputProfile getOutputProfile() {
+        return OutputProfile.getDefault();
+    }
 
+    /**
+     * Returns whether {@link #postProcess(byte[])} appends the header and the footer to the original bytes as an
+     * incremental update instead of rewriting the document, which keeps existing signatures valid.
+     *
+     * @return false by default
+     */
+    protected boolean isAppendMode() {
+        return false;
+    }
+
+    /**
+     * Stamps the header and the footer on the selected pages. Each image is decoded once per document and every
+     * selected page references the same image XObject, so the image data is embedded only once.
+     *
+     * @param pdf the document
+     * @return the document with header and footer
+     * @throws InvalidFileContentException if the document can not be read
+     */
+    @Override
+    public byte[] postProcess(byte[] pdf) {
+        try (Measurement measurement = Measurement.start("postProcess");
+             ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream()) {
+            PdfReader reader = new PdfReader(pdf);
+            int numberOfPages = reader.getNumberOfPages();
+            measurement.phase(PdfPhase.READ, numberOfPages, pdf.length);
+            PdfStamper pdfStamper = IncrementalUpdate.openStamper(reader, byteArrayOutputStream, isAppendMode());
+            getOutputProfile().apply(pdfStamper);
+            process(pdfStamper);
+            measurement.phase(PdfPhase.STAMP, numberOfPages, 0);
             pdfStamper.close();
+            measurement.phase(PdfPhase.WRITE, numberOfPages, byteArrayOutputStream.size());
+            measurement.stop(numberOfPages, byteArrayOutputStream.size());
             return byteArrayOutputStream.toByteArray();
         } catch (IOException | DocumentException e) {
             throw new InvalidFileContentException(e);
         }
     }
 
-    protected void buildHeader(PdfContentByte overContent, PdfDocument pdfDocument) throws IOException, DocumentException {
+    /**
+     * Stamps the header and the footer on the selected pages of a document that is already open, so that the
+     * processor can share a single parse and write with other processors of a {@link PdfProcessorChain}.
+     *
+     * @param pdfStamper the stamper of the document
+     */
+    @Override
+    public void process(PdfStamper pdfStamper) throws IOException, DocumentException {
+        PdfReader reader = pdfStamper.getReader();
+        int numberOfPages = reader.getNumberOfPages();
+
+        if(isHeaderEnabled()) {
+            if (LEGACY_HEADER.get(getClass())) {
+                for (int page : selectPages(getHeaderPages(), numberOfPages)) {
+                    PdfContentByte overContent = pdfStamper.getOverContent(page);
+                    buildHeader(overContent, overContent.getPdfDocument());
+                }
+            } else {
+                Image header = getHeaderImage();
+                for (int page : selectPages(getHeaderPages(), numberOfPages)) {
+                    buildHeader(pdfStamper.getOverContent(page), reader.getPageSizeWithRotation(page), header);
+                }
+            }
+        }
+        if(isFooterEnabled()) {
+            if (LEGACY_FOOTER.get(getClass())) {
+                for (int page : selectPages(getFooterPages(), numberOfPages)) {
+                    PdfContentByte overContent = pdfStamper.getOverContent(page);
+                    buildFooter(overContent, overContent.getPdfDocument());
+                }
+            } else {
+                Image footer = getFooterImage();
+                for (int page : selectPages(getFooterPages(), numberOfPages)) {
+                    buildFooter(pdfStamper.getOverContent(page), reader.getPageSizeWithRotation(page), footer);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the header image. By default the header stream is read on every call and the image is decoded once per
+     * distinct content, subclasses can override this with {@link #getFileImage(boolean, String, String)} to skip
+     * reading the stream as well.
+     *
+     * @return the header image
+     */
+    protected Image getHeaderImage() throws IOException, DocumentException {
+        return readCachedImage(getHeaderStream());
+    }
+
+    /**
+     * Returns the footer image. By default the footer stream is read on every call and the image is decoded once per
+     * distinct content, subclasses can override this with {@link #getFileImage(boolean, String, String)} to skip
+     * reading the stream as well.
+     *
+     * @return the footer image
+     */
+    protected Image getFooterImage() throws IOException, DocumentException {
+        return readCachedImage(getFooterStream());
+    }
+
+    protected void buildHeader(PdfContentByte overContent, Rectangle pageSize, Image header) throws IOException, DocumentException {
         buildStaticImages(
                 overContent,
-                getHeaderStream(),
-                pdfDocument.left(),
-                pdfDocument.top(40f),
+                header,
+                pageSize.getLeft(MARGIN),
+                pageSize.getTop(MARGIN + 40f),
                 100f,
                 250f);
     }
 
-    protected void buildFooter(PdfContentByte overContent, PdfDocument pdfDocument) throws IOException, DocumentException {
+    protected void buildFooter(PdfContentByte overContent, Rectangle pageSize, Image footer) throws IOException, DocumentException {
         buildStaticImages(
                 overContent,
-                getFooterStream(),
-                pdfDocument.left(),
-                pdfDocument.bottom(5f),
+                footer,
+                pageSize.getLeft(MARGIN),
+                pageSize.getBottom(MARGIN + 5f),
                 100f,
-                pdfDocument.right() - pdfDocument.left()
+                pageSize.getWidth() - 2 * MARGIN
         );
     }
 
-    private void buildStaticImages( PdfContentByte overContent, InputStream imageDataStream, float absoluteX,
-                                    float absoluteY, float heightScale, float widthScale) throws IOException, DocumentException {
+    /**
+     * Stamps the header at the position of the page size of the given document. A subclass that overrides this hook
+     * keeps working: it is then called for every selected page instead of
+     * {@link #buildHeader(PdfContentByte, Rectangle, Image)}.
+     *
+     * @deprecated override {@link #buildHeader(PdfContentByte, Rectangle, Image)}, which is called for every selected
+     * page with its size and the decoded image.
+     */
+    @Deprecated
+    protected void buildHeader(PdfContentByte overContent, PdfDocument pdfDocument) throws IOException, DocumentException {
+        buildHeader(overContent, pdfDocument.getPageSize(), getHeaderImage());
+    }
+
+    /**
+     * Stamps the footer at the position of the page size of the given document. A subclass that overrides this hook
+     * keeps working: it is then called for every selected page instead of
+     * {@link #buildFooter(PdfContentByte, Rectangle, Image)}.
+     *
+     * @deprecated override {@link #buildFooter(PdfContentByte, Rectangle, Image)}, which is called for every selected
+     * page with its size and the decoded image.
+     */
+    @Deprecated
+    protected void buildFooter(PdfContentByte overContent, PdfDocument pdfDocument) throws IOException, DocumentException {
+        buildFooter(overContent, pdfDocument.getPageSize(), getFooterImage());
+    }
 
-        try (InputStream dataStream = imageDataStream /* cause of redeclaration: "Resource references are not supported at language level 8 */) {
+    private static boolean overridesLegacyHook(Class<?> type, String name) {
+        for (Class<?> declaring = type; declaring != AbstractPdfDocumentProcessorPdf.class; declaring = declaring.getSuperclass()) {
+            try {
+                declaring.getDeclaredMethod(name, PdfContentByte.class, PdfDocument.class);
+                return true;
+            } catch (NoSuchMethodException e) {
+                // not overridden on this level
+            }
+        }
+        return false;
+    }
 
-            byte[] imageBytes = IOUtils.toByteArray(dataStream);
+    private static Set<Integer> selectPages(String pages, int numberOfPages) {
+        // a page listed more than once is stamped only once
+        return new LinkedHashSet<>(SequenceList.expand(pages, numberOfPages));
+    }
+
+    private void buildStaticImages( PdfContentByte overContent, Image image, float absoluteX,
+                                    float absoluteY, float heightScale, float widthScale) throws DocumentException {
 
-            Image image = Image.getInstance(imageBytes);
-            image.setAbsolutePosition(absoluteX, absoluteY);
-            image.scaleToFit(widthScale, heightScale);
+        image.setAbsolutePosition(absoluteX, absoluteY);
+        image.scaleToFit(widthScale, heightScale);
+
+        overContent.addImage(image);
+    }
 
-            overContent.addImage(image);
+    private static Image readImage(InputStream imageDataStream) throws IOException, DocumentException {
+        try (InputStream dataStream = imageDataStream /* cause of redeclaration: "Resource references are not supported at language level 8 */) {
+            return Image.getInstance(IOUtils.toByteArray(dataStream));
+        }
+    }
+
+    /**
+     * Reads an image stream and returns a copy of the cached image with the same content, decoding it only if the
+     * content was not seen before. The cache is keyed by the SHA-256 digest of the content.
+     */
+    private static Image readCachedImage(InputStream imageDataStream) throws IOException, DocumentException {
+        byte[] data;
+        try (InputStream dataStream = imageDataStream) {
+            data = IOUtils.toByteArray(dataStream);
+        }
+        return IMAGE_CACHE.get("sha256:" + PdfResultCache.key("image", data), ImageCache.UNVERSIONED, ImageCache.UNVERSIONED,
+                () -> Image.getInstance(data));
+    }
+
+    /**
+     * Returns the decoded image of the file that {@link #getFileStream(boolean, String, String)} would open. Decoded
+     * images are kept in a bounded cache shared by all processors, keyed by path. The image of an editable file is
+     * decoded again when the modification time or the size of the file changes.
+     * <p>
+     * Every call returns a new copy of the cached image that can be positioned freely, all copies are embedded as a
+     * single image into a document.
+     *
+     * @param useEditableOrBundled true to read the editable file, false to read the bundled resource
+     * @param filePathEditable the path of the editable file
+     * @param filePathBundled the path of the bundled resource
+     * @return the decoded image
+     */
+    protected Image getFileImage(boolean useEditableOrBundled, String filePathEditable, String filePathBundled) throws IOException, DocumentException {
+        if(useEditableOrBundled) {
+            File file = new File(filePathEditable);
+            if(!file.isFile()) {
+                String errMsg = "The editable file not found by the given path: " + filePathEditable;
+                log.error(errMsg);
+                throw new IllegalStateException(errMsg);
+            }
+            return IMAGE_CACHE.get(file.getAbsolutePath(), file.lastModified(), file.length(),
+                    () -> readImage(new FileInputStream(file)));
+        }
+        URL bundled = this.getClass().getResource(filePathBundled);
+        if(bundled == null) {
+            String errMsg = "The bundled file not found by the given path: " + filePathBundled;
+            log.error(errMsg);
+            throw new IllegalStateException(errMsg);
         }
+        return IMAGE_CACHE.get(bundled.toString(), ImageCache.UNVERSIONED, ImageCache.UNVERSIONED,
+                () -> readImage(bundled.openStream()));
     }
 
     public InputStream getFileStream(boolean useEditableOrBundled, String filePathEditable, String filePathBundled) {
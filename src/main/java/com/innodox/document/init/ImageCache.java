@@ -0,0 +1,82 @@
+package com.innodox.document.init;
+
+import com.itextpdf.text.DocumentException;
+import com.itextpdf.text.Image;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded least recently used cache of decoded images, keyed by resource path. An entry also records the modification
+ * time and size of the file it was decoded from and is decoded again when either of them changes.
+ * <p>
+ * Cached images are never handed out directly: callers get a copy that shares the decoded data and the serial id of
+ * the cached image, so positioning one copy does not affect the others and a writer embeds the image only once per
+ * document.
+ */
+class ImageCache {
+
+    /**
+     * Version of a resource that never changes, like a resource bundled on the classpath.
+     */
+    static final long UNVERSIONED = -1;
+
+    @FunctionalInterface
+    interface ImageLoader {
+        Image load() throws IOException, DocumentException;
+    }
+
+    private final Map<String, Entry> entries;
+
+    ImageCache(int maxEntries) {
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Returns a copy of the cached image, decoding it first if it is missing or stale.
+     *
+     * @param path the path of the resource
+     * @param lastModified the modification time of the resource, or {@link #UNVERSIONED}
+     * @param size the size of the resource, or {@link #UNVERSIONED}
+     * @param loader decodes the resource
+     * @return a copy of the decoded image
+     */
+    Image get(String path, long lastModified, long size, ImageLoader loader) throws IOException, DocumentException {
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(path);
+        }
+        if (entry == null || entry.lastModified != lastModified || entry.size != size) {
+            // decoding happens outside the lock, two threads may decode the same image once each on a cold cache
+            entry = new Entry(loader.load(), lastModified, size);
+            synchronized (entries) {
+                entries.put(path, entry);
+            }
+        }
+        return Image.getInstance(entry.image);
+    }
+
+    int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    private static class Entry {
+        private final Image image;
+        private final long lastModified;
+        private final long size;
+
+        private Entry(Image image, long lastModified, long size) {
+            this.image = image;
+            this.lastModified = lastModified;
+            this.size = size;
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package com.innodox.document.init;
+
+import com.innodox.exception.InvalidFileContentException;
+import com.innodox.metrics.Measurement;
+import com.innodox.metrics.PdfPhase;
+import com.innodox.util.IncrementalUpdate;
+import com.innodox.util.OutputProfile;
+import com.itextpdf.text.DocumentException;
+import com.itextpdf.text.pdf.PdfReader;
+import com.itextpdf.text.pdf.PdfStamper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Runs several processors on a document in order. Consecutive {@link PdfStamperProcessor}s share one
+ * {@link PdfStamper}, so the document is parsed once and written once for all of them. A plain {@link PdfPostProcessor}
+ * in between is applied to the bytes written so far and the next stamper processors open the result again.
+ * <p>
+ * A post processor that also implements {@link PdfStamperProcessor}, like {@link AbstractPdfDocumentProcessorPdf}, is
+ * run through the stamper.
+ */
+public class PdfProcessorChain implements PdfPostProcessor {
+
+    private static final Logger log = LoggerFactory.getLogger(PdfProcessorChain.class);
+
+    private final List<Step> steps;
+    private final OutputProfile outputProfile;
+    private final boolean appendMode;
+
+    private PdfProcessorChain(List<Step> steps, OutputProfile outputProfile, boolean appendMode) {
+        this.steps = Collections.unmodifiableList(new ArrayList<>(steps));
+        this.outputProfile = outputProfile;
+        this.appendMode = appendMode;
+    }
+
+    public static PdfProcessorChainBuilder builder() {
+        return new PdfProcessorChainBuilder();
+    }
+
+    /**
+     * @param pdf the document
+     * @return the document processed by every processor of the chain
+     * @throws InvalidFileContentException if the document can not be read or processed
+     */
+    @Override
+    public byte[] postProcess(byte[] pdf) {
+        try (Measurement measurement = Measurement.start("processorChain")) {
+            measurement.input(pdf.length);
+            byte[] document = pdf;
+            int pages = 0;
+            int i = 0;
+            while (i < steps.size()) {
+                if (steps.get(i).postProcessor != null) {
+                    document = steps.get(i++).postProcessor.postProcess(document);
+                    continue;
+                }
+                int first = i;
+                try (ByteArrayOutputStream outputStream = new ByteArrayOutputStream()) {
+                    PdfReader reader = new PdfReader(document);
+                    pages = reader.getNumberOfPages();
+                    // the input of the chain is already counted, re-reading intermediate results is not input
+                    measurement.phase(PdfPhase.READ, pages, 0);
+                    PdfStamper stamper = IncrementalUpdate.openStamper(reader, outputStream, appendMode);
+                    OutputProfile.orDefault(outputProfile).apply(stamper);
+                    while (i < steps.size() && steps.get(i).stamperProcessor != null) {
+                        steps.get(i++).stamperProcessor.process(stamper);
+                        measurement.phase(PdfPhase.STAMP, pages, 0);
+                    }
+                    stamper.close();
+                    reader.close();
+                    measurement.phase(PdfPhase.WRITE, pages, outputStream.size());
+                    document = outputStream.toByteArray();
+                } catch (IOException | DocumentException e) {
+                    throw new InvalidFileContentException(e);
+                }
+                log.debug("Processors {}-{} shared a single stamper", first + 1, i);
+            }
+            measurement.stop(pages, document.length);
+            return document;
+        }
+    }
+
+    public String toString() {
+        return "PdfProcessorChain(steps=" + this.steps.size() + ")";
+    }
+
+    private static class Step {
+        private final PdfStamperProcessor stamperProcessor;
+        private final PdfPostProcessor postProcessor;
+
+        private Step(PdfStamperProcessor stamperProcessor, PdfPostProcessor postProcessor) {
+            this.stamperProcessor = stamperProcessor;
+            this.postProcessor = postProcessor;
+        }
+    }
+
+    public static class PdfProcessorChainBuilder {
+        private final List<Step> steps = new ArrayList<>();
+        private OutputProfile outputProfile;
+        private boolean appendMode;
+
+        PdfProcessorChainBuilder() {
+        }
+
+        /**
+         * Appends a processor that works on the shared stamper.
+         */
+        public PdfProcessorChainBuilder process(PdfStamperProcessor processor) {
+            if (processor == null) throw new IllegalArgumentException("Processor is required");
+            this.steps.add(new Step(processor, null));
+            return this;
+        }
+
+        /**
+         * Appends a processor that works on the serialized document. If it also implements
+         * {@link PdfStamperProcessor} it works on the shared stamper instead.
+         */
+        public PdfProcessorChainBuilder postProcess(PdfPostProcessor processor) {
+            if (processor == null) throw new IllegalArgumentException("Processor is required");
+            if (processor instanceof PdfStamperProcessor) {
+                return process((PdfStamperProcessor) processor);
+            }
+            this.steps.add(new Step(null, processor));
+            return this;
+        }
+
+        /**
+         * Sets the profile the documents of the stamper processors are written with, {@link OutputProfile#getDefault()}
+         * if not set.
+         */
+        public PdfProcessorChainBuilder outputProfile(OutputProfile outputProfile) {
+            this.outputProfile = outputProfile;
+            return this;
+        }
+
+        /**
+         * Sets whether the stamper processors append their changes to the document as an incremental update instead
+         * of rewriting it, see {@link IncrementalUpdate}. A plain post processor in between may still rewrite it.
+         */
+        public PdfProcessorChainBuilder appendMode(boolean appendMode) {
+            this.appendMode = appendMode;
+            return this;
+        }
+
+        public PdfProcessorChain build() {
+            return new PdfProcessorChain(this.steps, this.outputProfile, this.appendMode);
+        }
+
+        public String toString() {
+            return "PdfProcessorChain.PdfProcessorChainBuilder(steps=" + this.steps.size() + ")";
+        }
+    }
+}
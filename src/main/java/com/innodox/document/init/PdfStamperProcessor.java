@@ -0,0 +1,21 @@
+package com.innodox.document.init;
+
+import com.itextpdf.text.DocumentException;
+import com.itextpdf.text.pdf.PdfStamper;
+
+import java.io.IOException;
+
+/**
+ * Processes a document that is already open. Unlike a {@link PdfPostProcessor}, which parses and serializes the whole
+ * document on its own, a stamper processor only modifies the stamper it is given, so that several processors can share
+ * a single parse and write in a {@link PdfProcessorChain}.
+ */
+@FunctionalInterface
+public interface PdfStamperProcessor {
+
+    /**
+     * @param stamper the stamper of the document, its reader is available through {@link PdfStamper#getReader()}.
+     *                The stamper must not be closed by the processor.
+     */
+    void process(PdfStamper stamper) throws IOException, DocumentException;
+}
@@ -0,0 +1,309 @@
+package com.innodox.manipulate;
+
+import com.innodox.exception.InvalidFileContentException;
+import com.innodox.model.PdfAttachment;
+import com.innodox.util.Futures;
+import com.itextpdf.text.pdf.PdfDate;
+import com.itextpdf.text.pdf.PdfDictionary;
+import com.itextpdf.text.pdf.PdfFileSpecification;
+import com.itextpdf.text.pdf.PdfIndirectReference;
+import com.itextpdf.text.pdf.PdfName;
+import com.itextpdf.text.pdf.PdfNumber;
+import com.itextpdf.text.pdf.PdfStamper;
+import com.itextpdf.text.pdf.PdfStream;
+import com.itextpdf.text.pdf.PdfWriter;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Compresses attachments before they are embedded and embeds every distinct content once.
+ * <p>
+ * The content of an attachment is digested first and deflated outside of the stamper when it is embedded, both
+ * concurrently if a parallelism above one is given, so a result cached by the digests is found without compressing
+ * anything. A stream can be read only once, it is deflated while it is digested.
+ * Attachments with the same SHA-256 digest share one embedded file stream, each keeping its own file specification,
+ * and are compressed once per call. Nothing is kept between calls, results are shared across documents through the
+ * opt-in cache of {@link PdfTransform.PdfTransformBuilder#withCache}.
+ */
+class AttachmentPayloads {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private AttachmentPayloads() {
+    }
+
+    /**
+     * Reads, digests and deflates the content of every attachment.
+     *
+     * @param attachments the attachments
+     * @param parallelism the number of attachments compressed at the same time
+     * @param executor the executor of the compression, null to create a pool for the call if parallelism is above one
+     * @param compressionLevel the deflate level
+     * @return one payload per attachment, in the order of the list
+     * @throws InvalidFileContentException if the content of an attachment can not be read
+     */
+    static List<Payload> prepare(List<PdfAttachment> attachments, int parallelism, Executor executor, int compressionLevel) {
+        List<Payload> payloads = digest(attachments, parallelism, executor, compressionLevel);
+        deflate(payloads, parallelism, executor);
+        return payloads;
+    }
+
+    /**
+     * Reads and digests the content of every attachment, only streams are deflated as well.
+     *
+     * @param attachments the attachments
+     * @param parallelism the number of attachments digested at the same time
+     * @param executor the executor of the digests, null to create a pool for the call if parallelism is above one
+     * @param compressionLevel the deflate level of the payloads
+     * @return one payload per attachment, in the order of the list
+     * @throws InvalidFileContentException if the content of an attachment can not be read
+     */
+    static List<Payload> digest(List<PdfAttachment> attachments, int parallelism, Executor executor, int compressionLevel) {
+        return forEach(attachments, parallelism, executor, attachment -> digest(attachment, compressionLevel));
+    }
+
+    /**
+     * Deflates the payloads that are not deflated yet, payloads with the same digest and level are deflated once.
+     *
+     * @param payloads the payloads
+     * @param parallelism the number of payloads compressed at the same time
+     * @param executor the executor of the compression, null to create a pool for the call if parallelism is above one
+     * @throws InvalidFileContentException if the content of an attachment can not be read
+     */
+    static void deflate(List<Payload> payloads, int parallelism, Executor executor) {
+        Map<String, Payload> distinct = new LinkedHashMap<>();
+        for (Payload payload : payloads) {
+            // a payload deflated while it was digested serves the equal ones as well
+            Payload first = distinct.putIfAbsent(payload.key(), payload);
+            if (first != null && first.deflated == null && payload.deflated != null) {
+                distinct.put(payload.key(), payload);
+            }
+        }
+        forEach(new ArrayList<>(distinct.values()), parallelism, executor, Payload::deflate);
+        for (Payload payload : payloads) {
+            if (payload.deflated == null) payload.deflated = distinct.get(payload.key()).deflated;
+        }
+    }
+
+    private static <T, R> List<R> forEach(List<T> items, int parallelism, Executor executor, Function<T, R> task) {
+        List<R> results = new ArrayList<>(items.size());
+        int threads = Math.min(parallelism, items.size());
+        if (threads <= 1) {
+            for (T item : items) {
+                results.add(task.apply(item));
+            }
+            return results;
+        }
+        ExecutorService ownExecutor = executor == null ? Executors.newFixedThreadPool(threads) : null;
+        Executor target = ownExecutor != null ? ownExecutor : executor;
+        List<CompletableFuture<R>> tasks = new ArrayList<>(items.size());
+        try {
+            for (T item : items) {
+                tasks.add(CompletableFuture.supplyAsync(() -> task.apply(item), target));
+            }
+            for (CompletableFuture<R> future : tasks) {
+                results.add(Futures.join(future));
+            }
+            return results;
+        } finally {
+            tasks.forEach(future -> future.cancel(false));
+            if (ownExecutor != null) ownExecutor.shutdown();
+        }
+    }
+
+    /**
+     * Embeds prepared attachments, writing each distinct content once.
+     *
+     * @param stamper the stamper of the document
+     * @param attachments the attachments
+     * @param payloads the deflated payloads of the attachments, in the same order
+     * @throws IOException if the document can not be written
+     */
+    static void embed(PdfStamper stamper, List<PdfAttachment> attachments, List<Payload> payloads) throws IOException {
+        PdfWriter writer = stamper.getWriter();
+        Map<String, PdfIndirectReference> streams = new HashMap<>();
+        for (int i = 0; i < attachments.size(); i++) {
+            PdfAttachment attachment = attachments.get(i);
+            Payload payload = payloads.get(i);
+            PdfIndirectReference reference = streams.get(payload.digest);
+            if (reference == null) {
+                reference = writer.addToBody(payload.toStream()).getIndirectReference();
+                streams.put(payload.digest, reference);
+            }
+            // the same entries as PdfFileSpecification.fileEmbedded, referencing the shared stream
+            PdfFileSpecification fs = PdfFileSpecification.fileExtern(writer, attachment.getFilename());
+            PdfDictionary ef = new PdfDictionary();
+            ef.put(PdfName.F, reference);
+            ef.put(PdfName.UF, reference);
+            fs.put(PdfName.EF, ef);
+            stamper.addFileAttachment(attachment.getDescription(), fs);
+        }
+    }
+
+    private static Payload digest(PdfAttachment attachment, int level) {
+        try {
+            if (attachment.getData() != null) {
+                byte[] data = attachment.getData();
+                String digest = digest(new ByteArrayInputStream(data));
+                return new Payload(digest, data.length, level, () -> new ByteArrayInputStream(data));
+            }
+            if (attachment.getFile() != null) {
+                String digest;
+                try (InputStream input = Files.newInputStream(attachment.getFile())) {
+                    digest = digest(input);
+                }
+                long size = Files.size(attachment.getFile());
+                return new Payload(digest, size, level, () -> Files.newInputStream(attachment.getFile()));
+            }
+            if (attachment.getInputStream() != null) {
+                // a stream can be read once, it is digested while it is deflated
+                try (InputStream input = attachment.getInputStream()) {
+                    MessageDigest messageDigest = newDigest();
+                    CountingDigestInputStream counting = new CountingDigestInputStream(input, messageDigest);
+                    byte[] deflated = deflate(counting, level);
+                    String digest = hex(messageDigest.digest());
+                    Payload payload = new Payload(digest, counting.count, level, null);
+                    payload.deflated = deflated;
+                    return payload;
+                }
+            }
+        } catch (IOException e) {
+            throw new InvalidFileContentException(e);
+        }
+        throw new IllegalArgumentException("Attachment has no content: " + attachment.getFilename());
+    }
+
+    private static byte[] deflate(InputStream input, int level) throws IOException {
+        ByteArrayOutputStream deflated = new ByteArrayOutputStream();
+        Deflater deflater = new Deflater(level);
+        try (DeflaterOutputStream output = new DeflaterOutputStream(deflated, deflater, BUFFER_SIZE)) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            for (int read; (read = input.read(buffer)) != -1; ) {
+                output.write(buffer, 0, read);
+            }
+        } finally {
+            deflater.end();
+        }
+        return deflated.toByteArray();
+    }
+
+    private static String digest(InputStream input) throws IOException {
+        MessageDigest digest = newDigest();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        for (int read; (read = input.read(buffer)) != -1; ) {
+            digest.update(buffer, 0, read);
+        }
+        return hex(digest.digest());
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    @FunctionalInterface
+    private interface InputOpener {
+        InputStream open() throws IOException;
+    }
+
+    private static class CountingDigestInputStream extends DigestInputStream {
+        private long count;
+
+        private CountingDigestInputStream(InputStream input, MessageDigest digest) {
+            super(input, digest);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int read = super.read();
+            if (read != -1) count++;
+            return read;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0) count += read;
+            return read;
+        }
+    }
+
+    /**
+     * The digest and, once it is deflated, the deflated content of an attachment.
+     */
+    static class Payload {
+        private final String digest;
+        private final long size;
+        private final int level;
+        private final InputOpener opener;
+        private volatile byte[] deflated;
+
+        private Payload(String digest, long size, int level, InputOpener opener) {
+            this.digest = digest;
+            this.size = size;
+            this.level = level;
+            this.opener = opener;
+        }
+
+        String getDigest() {
+            return digest;
+        }
+
+        private String key() {
+            return level + ":" + digest;
+        }
+
+        private Payload deflate() {
+            if (deflated == null) {
+                try (InputStream input = opener.open()) {
+                    deflated = AttachmentPayloads.deflate(input, level);
+                } catch (IOException e) {
+                    throw new InvalidFileContentException(e);
+                }
+            }
+            return this;
+        }
+
+        private PdfStream toStream() {
+            if (deflated == null) throw new IllegalStateException("Attachment is not deflated: " + digest);
+            PdfStream stream = new PdfStream(deflated);
+            stream.put(PdfName.TYPE, PdfName.EMBEDDEDFILE);
+            stream.put(PdfName.FILTER, PdfName.FLATEDECODE);
+            PdfDictionary params = new PdfDictionary();
+            params.put(PdfName.MODDATE, new PdfDate());
+            params.put(PdfName.SIZE, new PdfNumber(size));
+            stream.put(PdfName.PARAMS, params);
+            return stream;
+        }
+    }
+}
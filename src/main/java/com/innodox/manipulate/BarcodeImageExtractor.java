@@ -0,0 +1,186 @@
+package com.innodox.manipulate;
+
+import com.innodox.exception.BarcodeGenerationFailedException;
+import com.innodox.exception.InvalidFileContentException;
+import com.innodox.metrics.Measurement;
+import com.innodox.metrics.PdfPhase;
+import com.innodox.util.Futures;
+import com.innodox.util.PdfSource;
+import com.itextpdf.text.pdf.PRIndirectReference;
+import com.itextpdf.text.pdf.PRStream;
+import com.itextpdf.text.pdf.PdfArray;
+import com.itextpdf.text.pdf.PdfDictionary;
+import com.itextpdf.text.pdf.PdfName;
+import com.itextpdf.text.pdf.PdfNumber;
+import com.itextpdf.text.pdf.PdfObject;
+import com.itextpdf.text.pdf.PdfReader;
+import com.itextpdf.text.pdf.SequenceList;
+import com.itextpdf.text.pdf.parser.PdfImageObject;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Collects the images of a scanned document that may contain a barcode.
+ * <p>
+ * Every image XObject is inspected once. Form XObjects and images smaller than {@link #MIN_IMAGE_SIZE} pixels in
+ * either direction are skipped by their dictionary alone, JPEG and JPEG 2000 images are returned as they are stored
+ * without being decoded, other images are converted by {@link PdfImageObject}. An image referenced by several pages is
+ * returned once.
+ */
+class BarcodeImageExtractor {
+
+    /**
+     * The minimum width and height in pixels of an image that can hold a barcode.
+     */
+    static final int MIN_IMAGE_SIZE = 16;
+
+    private BarcodeImageExtractor() {
+    }
+
+    /**
+     * @param document the document
+     * @param pages the pages to inspect in the syntax of {@link SequenceList}, for example "1-" for every page
+     * @param parallelism the number of page groups inspected at the same time, each through its own reader
+     * @param executor the executor of the page groups, null to create a pool for the call if parallelism is above one
+     * @return the images in page order
+     * @throws BarcodeGenerationFailedException if none of the pages has XObjects
+     * @throws InvalidFileContentException if the document can not be read
+     */
+    static List<byte[]> extract(PdfSource document, String pages, int parallelism, Executor executor) {
+        try (Measurement measurement = Measurement.start("getBarcodeFromPdf")) {
+            List<Integer> pageNumbers = new ArrayList<>(
+                    new LinkedHashSet<>(SequenceList.expand(pages, countPages(document, measurement))));
+            int groups = Math.min(parallelism, pageNumbers.size());
+
+            List<Found> found = new ArrayList<>();
+            if (groups <= 1) {
+                found.add(scan(document, pageNumbers));
+            } else {
+                ExecutorService ownExecutor = executor == null ? Executors.newFixedThreadPool(groups) : null;
+                Executor target = ownExecutor != null ? ownExecutor : executor;
+                List<CompletableFuture<Found>> tasks = new ArrayList<>(groups);
+                try {
+                    int groupSize = (pageNumbers.size() + groups - 1) / groups;
+                    for (int first = 0; first < pageNumbers.size(); first += groupSize) {
+                        List<Integer> group = pageNumbers.subList(first, Math.min(pageNumbers.size(), first + groupSize));
+                        tasks.add(CompletableFuture.supplyAsync(() -> scan(document, group), target));
+                    }
+                    for (CompletableFuture<Found> task : tasks) {
+                        found.add(Futures.join(task));
+                    }
+                } finally {
+                    tasks.forEach(task -> task.cancel(false));
+                    if (ownExecutor != null) ownExecutor.shutdown();
+                }
+            }
+
+            if (found.stream().noneMatch(f -> f.hasXObjects)) {
+                throw new BarcodeGenerationFailedException();
+            }
+            Map<Object, byte[]> images = new LinkedHashMap<>();
+            for (Found f : found) {
+                for (int i = 0; i < f.images.size(); i++) {
+                    images.putIfAbsent(f.keys.get(i), f.images.get(i));
+                }
+            }
+            List<byte[]> result = new ArrayList<>(images.values());
+            measurement.stop(pageNumbers.size(), result.stream().mapToLong(image -> image.length).sum());
+            return result;
+        }
+    }
+
+    /**
+     * Reads the page count through a partial reader, which resolves only the page tree root. The public
+     * {@link com.innodox.util.PdfUtil#getPageCount(PdfSource)} is not used, so that the barcode operation is not
+     * reported as a page count request.
+     */
+    private static int countPages(PdfSource document, Measurement measurement) {
+        PdfReader reader = null;
+        try {
+            reader = document.openPartialReader();
+            int numberOfPages = reader.getNumberOfPages();
+            measurement.phase(PdfPhase.READ, numberOfPages, reader.getFileLength());
+            return numberOfPages;
+        } catch (IOException e) {
+            throw new InvalidFileContentException(e);
+        } finally {
+            if (reader != null) {
+                reader.close();
+            }
+        }
+    }
+
+    private static Found scan(PdfSource document, List<Integer> pages) {
+        Found found = new Found();
+        PdfReader reader = null;
+        try {
+            reader = document.openPartialReader();
+            for (int page : pages) {
+                PdfDictionary xObjects = reader.getPageResources(page).getAsDict(PdfName.XOBJECT);
+                if (xObjects == null) {
+                    continue;
+                }
+                found.hasXObjects = true;
+                for (PdfName name : xObjects.getKeys()) {
+                    PdfObject reference = xObjects.get(name);
+                    // an image shared by several pages is read once, direct images can not be shared
+                    Object key = reference instanceof PRIndirectReference ? ((PRIndirectReference) reference).getNumber() : new Object();
+                    if (found.keys.contains(key)) {
+                        continue;
+                    }
+                    PdfObject object = PdfReader.getPdfObject(reference);
+                    if (!(object instanceof PRStream)) {
+                        continue;
+                    }
+                    byte[] image = readImage((PRStream) object);
+                    if (image != null) {
+                        found.keys.add(key);
+                        found.images.add(image);
+                    }
+                }
+            }
+            return found;
+        } catch (IOException e) {
+            throw new InvalidFileContentException(e);
+        } finally {
+            if (reader != null) {
+                reader.close();
+            }
+        }
+    }
+
+    private static byte[] readImage(PRStream stream) throws IOException {
+        if (!PdfName.IMAGE.equals(stream.getAsName(PdfName.SUBTYPE))) {
+            return null;
+        }
+        PdfNumber width = stream.getAsNumber(PdfName.WIDTH);
+        PdfNumber height = stream.getAsNumber(PdfName.HEIGHT);
+        if (width == null || height == null || width.intValue() < MIN_IMAGE_SIZE || height.intValue() < MIN_IMAGE_SIZE) {
+            return null;
+        }
+        PdfObject filter = PdfReader.getPdfObject(stream.get(PdfName.FILTER));
+        if (filter instanceof PdfArray && ((PdfArray) filter).size() == 1) {
+            filter = ((PdfArray) filter).getDirectObject(0);
+        }
+        if (PdfName.DCTDECODE.equals(filter) || PdfName.JPXDECODE.equals(filter)) {
+            return PdfReader.getStreamBytesRaw(stream);
+        }
+        byte[] image = new PdfImageObject(stream).getImageAsBytes();
+        return image != null && image.length > 0 ? image : null;
+    }
+
+    private static class Found {
+        private final List<Object> keys = new ArrayList<>();
+        private final List<byte[]> images = new ArrayList<>();
+        private boolean hasXObjects;
+    }
+}
@@ -0,0 +1,37 @@
+package com.innodox.manipulate;
+
+/**
+ * Limits the number of document bytes processed at the same time. Callers block in {@link #acquire(long)} until enough
+ * of the budget is released, a single document larger than the whole budget is admitted alone.
+ */
+class ByteBudget {
+
+    private final long limit;
+    private long available;
+
+    ByteBudget(long limit) {
+        this.limit = limit;
+        this.available = limit;
+    }
+
+    /**
+     * Reserves bytes of the budget, waiting until they are available.
+     *
+     * @param bytes the number of bytes to reserve
+     * @return the number of bytes actually reserved, to be passed to {@link #release(long)}
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    synchronized long acquire(long bytes) throws InterruptedException {
+        long reserved = Math.min(bytes, limit);
+        while (available < reserved) {
+            wait();
+        }
+        available -= reserved;
+        return reserved;
+    }
+
+    synchronized void release(long reserved) {
+        available += reserved;
+        notifyAll();
+    }
+}
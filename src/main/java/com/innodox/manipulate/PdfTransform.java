@@ -1,20 +1,42 @@
 package com.innodox.manipulate;
 
 
+import com.innodox.document.init.PdfProcessorChain;
+import com.innodox.document.init.PdfStamperProcessor;
 import com.innodox.exception.BarcodeGenerationFailedException;
 import com.innodox.exception.InvalidFileContentException;
+import com.innodox.metrics.Measurement;
+import com.innodox.metrics.PdfPhase;
 import com.innodox.model.PdfAttachment;
+import com.innodox.model.PdfResult;
+import com.innodox.util.Futures;
+import com.innodox.util.IncrementalUpdate;
+import com.innodox.util.OutputProfile;
+import com.innodox.util.ParallelStamping;
+import com.innodox.util.PdfResultCache;
+import com.innodox.util.PdfSource;
 import com.itextpdf.text.*;
 import com.itextpdf.text.pdf.*;
-import com.itextpdf.text.pdf.parser.PdfImageObject;
 import lombok.AccessLevel;
 import lombok.NoArgsConstructor;
 
+import java.io.BufferedOutputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
 import java.util.stream.Collectors;
 
 /**
@@ -63,10 +85,117 @@ public class PdfTransform {
         return builder;
     }
 
+    /**
+     * Create a new {@link PdfTransformBuilder} instance initialized with a PDF file. The file is memory-mapped when it
+     * is processed, so it is never loaded onto the heap as a whole.
+     *
+     * @param pdfPath the PDF file
+     * @return the builder
+     */
+
+    public static PdfTransformBuilder get(Path pdfPath) {
+        PdfTransformBuilder builder = new PdfTransformBuilder();
+        builder.add(pdfPath);
+        return builder;
+    }
+
+    /**
+     * Merge documents that are opened lazily, one at a time, straight into an output stream. Every document is freed
+     * as soon as its pages are copied, so heap usage is bounded by the largest single input rather than the total.
+     *
+     * @param sources the documents to merge, in the order of merging
+     * @param outputStream the sink of the merged document, it is not closed
+     * @return the number of merged documents, nothing is written if there are no documents
+     * @throws InvalidFileContentException If an error occurs while processing the PDF files.
+     */
+
+    public static int merge(Iterator<PdfSource> sources, OutputStream outputStream) {
+        if (!sources.hasNext()) return 0;
+        return PdfTransformBuilder.mergePdfReaders(new Iterator<PdfReader>() {
+            @Override
+            public boolean hasNext() {
+                return sources.hasNext();
+            }
+
+            @Override
+            public PdfReader next() {
+                return PdfTransformBuilder.openReader(sources.next());
+            }
+        }, outputStream, null, OutputProfile.getDefault());
+    }
+
+    /**
+     * Merge documents that are opened lazily, one at a time, straight into a file.
+     *
+     * @param sources the documents to merge, in the order of merging
+     * @param target the merged file, it is replaced if it exists
+     * @return the number of merged documents, the file is not created if there are no documents
+     * @throws InvalidFileContentException If an error occurs while processing the PDF files.
+     * @see #merge(Iterator, OutputStream)
+     */
+
+    public static int merge(Iterator<PdfSource> sources, Path target) {
+        if (!sources.hasNext()) return 0;
+        try (OutputStream outputStream = new BufferedOutputStream(Files.newOutputStream(target))) {
+            return merge(sources, outputStream);
+        } catch (IOException e) {
+            throw new InvalidFileContentException(e);
+        }
+    }
+
+    /**
+     * Returns a processor that stamps a watermark on every page of a document, to be combined with other processors
+     * in a {@link PdfProcessorChain}. If the stamper rotates its contents, as it does by default, the watermark is
+     * centered on the page as it is displayed.
+     *
+     * @param watermark the watermark
+     * @return the processor
+     */
+
+    public static PdfStamperProcessor watermarkProcessor(Watermark watermark) {
+        return stamper -> {
+            PdfReader reader = stamper.getReader();
+            WatermarkStamp stamp = new WatermarkStamp(watermark);
+            for (int i = 1; i <= reader.getNumberOfPages(); i++) {
+                stamp.apply(stamper.getOverContent(i),
+                        stamper.isRotateContents() ? reader.getPageSizeWithRotation(i) : reader.getPageSize(i));
+            }
+        };
+    }
+
+    /**
+     * Returns a processor that embeds attachments into a document, to be combined with other processors in a
+     * {@link PdfProcessorChain}. Attachments with the same content share one embedded file stream.
+     *
+     * @param attachments the attachments, backed by a byte array, a file or a stream
+     * @return the processor
+     */
+
+    public static PdfStamperProcessor attachmentProcessor(List<PdfAttachment> attachments) {
+        return stamper -> AttachmentPayloads.embed(stamper, attachments,
+            AttachmentPayloads.prepare(attachments, 1, null, OutputProfile.getDefault().getEmbeddedFileCompressionLevel()));
+    }
+
     @NoArgsConstructor(access = AccessLevel.PRIVATE)
     public static class PdfTransformBuilder {
 
-        private List<byte[]> listOfDocs = new ArrayList<>();
+        private List<PdfSource> listOfDocs = new ArrayList<>();
+
+        private Executor executor;
+
+        private Watermark watermark = Watermark.DEFAULT;
+
+        private int parallelism = 1;
+
+        private long maxInFlightBytes = Long.MAX_VALUE;
+
+        private ParallelStamping parallelStamping;
+
+        private PdfResultCache cache;
+
+        private OutputProfile outputProfile;
+
+        private boolean appendMode;
 
         /**
          * Add an element for working list.
@@ -75,25 +204,151 @@ public class PdfTransform {
          * @return current builder instance
          */
         public PdfTransformBuilder add(byte[] pdf) {
-            if (pdf != null) this.listOfDocs.add(pdf);
+            if (pdf != null) this.listOfDocs.add(PdfSource.of(pdf));
+            return this;
+        }
+
+        /**
+         * Add a PDF file for working list. The file is memory-mapped instead of being loaded onto the heap.
+         *
+         * @param pdfPath a new pdf file
+         * @return current builder instance
+         */
+        public PdfTransformBuilder add(Path pdfPath) {
+            if (pdfPath != null) this.listOfDocs.add(PdfSource.of(pdfPath));
             return this;
         }
 
         /**
-         * Add list of elements for working list.
+         * Add list of elements for working list. Null elements are skipped like a null passed to {@link #add(byte[])}.
          *
          * @param pdfList list of pdfs
          * @return current builder instance
          */
         public PdfTransformBuilder addAll(List<byte[]> pdfList) {
-            if (pdfList != null && !pdfList.isEmpty()) this.listOfDocs.addAll(pdfList);
+            if (pdfList != null) pdfList.forEach(this::add);
             return this;
         }
 
+        /**
+         * Set the executor used by the concurrent operation modes. When an executor is set, merging parses its inputs
+         * concurrently on it while pages are copied in the original order, so document N is copied as soon as
+         * documents 1..N have been parsed. Only as many documents as set by {@link #withParallelism(int)} are parsed
+         * ahead of the one being copied, so the readers held at the same time stay bounded.
+         *
+         * @param executor executor for concurrent work or null to process everything on the calling thread
+         * @return current builder instance
+         */
+        public PdfTransformBuilder withExecutor(Executor executor) {
+            this.executor = executor;
+            return this;
+        }
+
+        /**
+         * Set how many documents are watermarked at the same time by {@link #watermarkAll()} and
+         * {@link #tryWatermarkAll()}, how many page groups {@link #getBarcodeFromPdf(String)} inspects at the same
+         * time, and how many attachments {@link #addAttachments(byte[], List)} compresses at the same time. With a
+         * parallelism above one the documents are processed on the executor set by {@link #withExecutor(Executor)}, or
+         * on a pool of this size created for the call if no executor is set. A merge on an executor parses this many
+         * documents ahead of the one being copied.
+         *
+         * @param parallelism the number of documents processed at the same time, 1 (the default) is sequential
+         * @return current builder instance
+         */
+        public PdfTransformBuilder withParallelism(int parallelism) {
+            if (parallelism < 1) throw new IllegalArgumentException("Parallelism must be positive: " + parallelism);
+            this.parallelism = parallelism;
+            return this;
+        }
+
+        /**
+         * Set the maximum total size of the documents watermarked at the same time. Submission of further documents
+         * waits until enough documents have completed, so a batch of large inputs can not exhaust the heap. A single
+         * document larger than the budget is processed alone.
+         *
+         * @param maxInFlightBytes the budget in bytes, unlimited if not set
+         * @return current builder instance
+         */
+        public PdfTransformBuilder withMaxInFlightBytes(long maxInFlightBytes) {
+            if (maxInFlightBytes < 1) throw new IllegalArgumentException("Byte budget must be positive: " + maxInFlightBytes);
+            this.maxInFlightBytes = maxInFlightBytes;
+            return this;
+        }
+
+        /**
+         * Set the parallel stamping mode of {@link #watermark()} and {@link #watermarkAll()}. Documents with at least
+         * as many pages as the threshold of the mode and without document level structures, like outlines or forms, are
+         * watermarked in page ranges concurrently.
+         *
+         * @param parallelStamping the parallel stamping mode, or null (the default) to stamp every page sequentially
+         * @return current builder instance
+         */
+        public PdfTransformBuilder withParallelStamping(ParallelStamping parallelStamping) {
+            this.parallelStamping = parallelStamping;
+            return this;
+        }
+
+        /**
+         * Set the appearance of the watermark stamped by the watermark operations.
+         *
+         * @param watermark the watermark, {@link Watermark#DEFAULT} if not set
+         * @return current builder instance
+         */
+        public PdfTransformBuilder withWatermark(Watermark watermark) {
+            this.watermark = watermark != null ? watermark : Watermark.DEFAULT;
+            return this;
+        }
+
+        /**
+         * Set a cache for the results of {@link #merge()}, {@link #mergeAndWatermark()}, the watermark operations and
+         * {@link #addAttachments(byte[], List)}. Results are keyed by the content of the input documents and the
+         * parameters of the operation, like the watermark.
+         *
+         * @param cache the cache, or null (the default) to process every call
+         * @return current builder instance
+         */
+        public PdfTransformBuilder withCache(PdfResultCache cache) {
+            this.cache = cache;
+            return this;
+        }
+
+        /**
+         * Set the profile the results are written with: the compression level of stamped contents and attachments,
+         * object streams, and whether {@link #merge()} and {@link #mergeAndWatermark()} store resources shared between
+         * the documents once.
+         *
+         * @param outputProfile the profile, or null (the default) for {@link OutputProfile#getDefault()}
+         * @return current builder instance
+         */
+        public PdfTransformBuilder withOutputProfile(OutputProfile outputProfile) {
+            this.outputProfile = outputProfile;
+            return this;
+        }
+
+        /**
+         * Set whether {@link #watermark()}, the other watermark operations and {@link #addAttachments(byte[], List)}
+         * append their changes to the original bytes as an incremental update instead of rewriting the document. The
+         * original bytes, and the signatures over them, are kept unchanged. Parallel stamping does not apply in append
+         * mode.
+         *
+         * @param appendMode true to append, false (the default) to rewrite
+         * @return current builder instance
+         * @see IncrementalUpdate
+         */
+        public PdfTransformBuilder withAppendMode(boolean appendMode) {
+            this.appendMode = appendMode;
+            return this;
+        }
+
+        private OutputProfile outputProfile() {
+            return OutputProfile.orDefault(this.outputProfile);
+        }
+
         /**
          *
          * @param document
-         * @param attachments
+         * @param attachments backed by a byte array, a file or a stream. Attachments with the same content are
+         *                    embedded once.
          * @return document with the required attachments embedded
          * @throws IOException
          * @throws DocumentException
@@ -102,22 +357,79 @@ public class PdfTransform {
             byte[] document,
             List<PdfAttachment> attachments
         ) throws IOException, DocumentException {
-            PdfReader reader = new PdfReader(document);
-            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-            PdfStamper stamper = new PdfStamper(reader, outputStream);
-
-            for (PdfAttachment attachment : attachments) {
-                PdfFileSpecification fs = PdfFileSpecification.fileEmbedded(
-                    stamper.getWriter(),
-                    null,
-                    attachment.getFilename(),
-                    attachment.getData()
-                );
-                stamper.addFileAttachment(attachment.getDescription(), fs);
+            return addAttachments(PdfSource.of(document), attachments);
+        }
+
+        /**
+         *
+         * @param document PDF file, memory-mapped instead of being loaded onto the heap
+         * @param attachments
+         * @return document with the required attachments embedded
+         * @throws IOException
+         * @throws DocumentException
+         */
+        public byte[] addAttachments(
+            Path document,
+            List<PdfAttachment> attachments
+        ) throws IOException, DocumentException {
+            return addAttachments(PdfSource.of(document), attachments);
+        }
+
+        private byte[] addAttachments(
+            PdfSource document,
+            List<PdfAttachment> attachments
+        ) throws IOException, DocumentException {
+            // the contents are digested up front, a cached result is found without compressing them
+            OutputProfile profile = outputProfile();
+            List<AttachmentPayloads.Payload> payloads = AttachmentPayloads.digest(
+                attachments, this.parallelism, this.executor, profile.getEmbeddedFileCompressionLevel());
+            if (this.cache == null) return embedAttachments(document, attachments, payloads);
+            List<Object> parameters = new ArrayList<>();
+            for (int i = 0; i < attachments.size(); i++) {
+                parameters.add(attachments.get(i).getFilename());
+                parameters.add(attachments.get(i).getDescription());
+                parameters.add(payloads.get(i).getDigest());
             }
+            try {
+                return this.cache.get(PdfResultCache.key("addAttachments", profile, this.appendMode, document, parameters), () -> {
+                    try {
+                        return embedAttachments(document, attachments, payloads);
+                    } catch (IOException | DocumentException e) {
+                        throw new InvalidFileContentException(e);
+                    }
+                });
+            } catch (InvalidFileContentException e) {
+                // keep the checked exceptions of the uncached operation
+                if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+                if (e.getCause() instanceof DocumentException) throw (DocumentException) e.getCause();
+                throw e;
+            }
+        }
 
-            stamper.close();
-            return outputStream.toByteArray();
+        private byte[] embedAttachments(
+            PdfSource document,
+            List<PdfAttachment> attachments,
+            List<AttachmentPayloads.Payload> payloads
+        ) throws IOException, DocumentException {
+            try (Measurement measurement = Measurement.start("addAttachments")) {
+                // the contents are deflated before the stamper is opened, concurrently with a parallelism above one
+                AttachmentPayloads.deflate(payloads, this.parallelism, this.executor);
+                PdfReader reader = document.openReader();
+                try {
+                    int numberOfPages = reader.getNumberOfPages();
+                    measurement.phase(PdfPhase.READ, numberOfPages, reader.getFileLength());
+                    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+                    PdfStamper stamper = IncrementalUpdate.openStamper(reader, outputStream, this.appendMode);
+                    outputProfile().apply(stamper);
+                    AttachmentPayloads.embed(stamper, attachments, payloads);
+                    stamper.close();
+                    measurement.phase(PdfPhase.WRITE, numberOfPages, outputStream.size());
+                    measurement.stop(numberOfPages, outputStream.size());
+                    return outputStream.toByteArray();
+                } finally {
+                    reader.close();
+                }
+            }
         }
 
         /**
@@ -130,9 +442,48 @@ public class PdfTransform {
          */
         public byte[] merge() {
             if (this.listOfDocs.size() < 2) return new byte[0];
+            if (this.cache != null) {
+                return this.cache.get(PdfResultCache.key("merge", outputProfile(), this.listOfDocs), () -> mergePdf(this.listOfDocs));
+            }
             return mergePdf(this.listOfDocs);
         }
 
+        /**
+         * Need to add more than one document for merging. The merged document is written straight to the output
+         * stream and every input is freed as soon as its pages are copied.
+         *
+         * @param outputStream the sink of the merged document, it is not closed
+         * @return <ul>
+         *      <li>true if the list of documents contains more than one document</li>
+         *      <li>false otherwise, nothing is written in this case</li>
+         *  </ul>
+         */
+        public boolean merge(OutputStream outputStream) {
+            if (this.listOfDocs.size() < 2) return false;
+            mergePdf(this.listOfDocs, outputStream, false);
+            return true;
+        }
+
+        /**
+         * Need to add more than one document for merging. The merged document is written straight to the file and
+         * every input is freed as soon as its pages are copied.
+         *
+         * @param target the merged file, it is replaced if it exists
+         * @return <ul>
+         *      <li>true if the list of documents contains more than one document</li>
+         *      <li>false otherwise, the file is not created in this case</li>
+         *  </ul>
+         */
+        public boolean merge(Path target) {
+            if (this.listOfDocs.size() < 2) return false;
+            try (OutputStream outputStream = new BufferedOutputStream(Files.newOutputStream(target))) {
+                mergePdf(this.listOfDocs, outputStream, false);
+                return true;
+            } catch (IOException e) {
+                throw new InvalidFileContentException(e);
+            }
+        }
+
         /**
          * Need to add more than one byte array for merging.
          *
@@ -143,17 +494,47 @@ public class PdfTransform {
          */
         public byte[] mergeAndWatermark() {
             if (this.listOfDocs.size() < 2) return new byte[0];
-            byte[] mergedFile = mergePdf(this.listOfDocs);
-            return watermark(mergedFile);
+            if (this.cache != null) {
+                return this.cache.get(PdfResultCache.key("mergeAndWatermark", outputProfile(), this.watermark, this.listOfDocs),
+                    this::mergeAndWatermarkPdf);
+            }
+            return mergeAndWatermarkPdf();
+        }
+
+        private byte[] mergeAndWatermarkPdf() {
+            // the watermark is stamped while the pages are imported, so the merged document is written only once
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            mergePdf(this.listOfDocs, outputStream, true);
+            return outputStream.toByteArray();
         }
 
         /**
-         * Have to call if you have more than one docs in the list.
+         * Have to call if you have more than one docs in the list. The documents are processed concurrently if a
+         * parallelism above one is set.
          *
-         * @return list of marked docs
+         * @return list of marked docs, in the order of the list
+         * @throws InvalidFileContentException for the first document that could not be marked
          */
         public List<byte[]> watermarkAll() {
-            return watermark(this.listOfDocs);
+            if (this.parallelism == 1) return watermark(this.listOfDocs);
+            return watermarkConcurrently(this.listOfDocs).stream()
+                .map(PdfResult::getDataOrThrow)
+                .collect(Collectors.toList());
+        }
+
+        /**
+         * Mark every document of the list, reporting failures per document instead of aborting the whole batch.
+         * The documents are processed concurrently if a parallelism above one is set.
+         *
+         * @return one result per document, in the order of the list
+         */
+        public List<PdfResult> tryWatermarkAll() {
+            if (this.parallelism == 1) {
+                return this.listOfDocs.stream()
+                    .map(this::tryWatermark)
+                    .collect(Collectors.toList());
+            }
+            return watermarkConcurrently(this.listOfDocs);
         }
 
         /**
@@ -165,92 +546,147 @@ public class PdfTransform {
             return watermark(this.listOfDocs.get(0));
         }
 
-        private List<byte[]> watermark(List<byte[]> files) {
+        private List<byte[]> watermark(List<PdfSource> files) {
             return files.stream()
                 .map(file -> watermark(file))
                 .collect(Collectors.toList());
         }
 
-        public List<byte[]> getBarcodeFromPdf() {
-            if (this.listOfDocs.size() < 1) return Collections.emptyList();
-
+        private PdfResult tryWatermark(PdfSource file) {
             try {
-                PdfReader reader = new PdfReader(listOfDocs.get(0));
-                PdfDictionary pageResources = reader.getPageResources(1);
-                PdfDictionary xObjects = pageResources.getAsDict(PdfName.XOBJECT);
+                return PdfResult.success(watermark(file));
+            } catch (RuntimeException e) {
+                return PdfResult.failure(e);
+            }
+        }
 
-                if (xObjects == null) {
-                    throw new BarcodeGenerationFailedException();
-                }
+        /**
+         * Watermarks documents concurrently with at most {@link #parallelism} documents and {@link #maxInFlightBytes}
+         * input bytes in flight. The calling thread blocks before submitting a document until both limits allow it.
+         *
+         * @param files the documents to watermark
+         * @return one result per document, in the order of the list
+         */
 
-                return xObjects.getKeys().stream()
-                    .filter(key -> {
-                        try {
-                            PRStream imgStream = (PRStream) xObjects.getAsStream(key);
-                            PdfImageObject imgObject = new PdfImageObject(imgStream);
+        private List<PdfResult> watermarkConcurrently(List<PdfSource> files) {
+            ExecutorService ownExecutor = this.executor == null ? Executors.newFixedThreadPool(this.parallelism) : null;
+            Executor target = ownExecutor != null ? ownExecutor : this.executor;
+            Semaphore slots = new Semaphore(this.parallelism);
+            ByteBudget budget = new ByteBudget(this.maxInFlightBytes);
 
-                            return imgObject.getImageAsBytes() != null && imgObject.getImageAsBytes().length > 0;
-                        } catch (IOException e) {
-                            throw new InvalidFileContentException(e);
-                        }
-                    })
-                    .map(key -> {
-                        try {
-                            return new PdfImageObject((PRStream) xObjects.getAsStream(key)).getImageAsBytes();
-                        } catch (IOException e) {
-                            throw new InvalidFileContentException(e);
-                        }
-                    })
+            List<CompletableFuture<PdfResult>> results = new ArrayList<>(files.size());
+            try {
+                for (PdfSource file : files) {
+                    long length;
+                    try {
+                        length = file.length();
+                    } catch (IOException e) {
+                        results.add(CompletableFuture.completedFuture(PdfResult.failure(new InvalidFileContentException(e))));
+                        continue;
+                    }
+
+                    slots.acquire();
+                    long reserved = budget.acquire(length);
+                    try {
+                        results.add(CompletableFuture.supplyAsync(() -> {
+                            try {
+                                return tryWatermark(file);
+                            } finally {
+                                budget.release(reserved);
+                                slots.release();
+                            }
+                        }, target));
+                    } catch (RuntimeException e) {
+                        // the executor rejected the document
+                        budget.release(reserved);
+                        slots.release();
+                        results.add(CompletableFuture.completedFuture(PdfResult.failure(e)));
+                    }
+                }
+                return results.stream()
+                    .map(CompletableFuture::join)
                     .collect(Collectors.toList());
-            } catch (IOException ioe) {
-                throw new InvalidFileContentException(ioe);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for watermarking capacity", e);
+            } finally {
+                if (ownExecutor != null) ownExecutor.shutdown();
             }
         }
 
+        /**
+         * Collects the images of every page of the first document that may contain a barcode.
+         *
+         * @return the images in page order
+         * @see #getBarcodeFromPdf(String)
+         */
+        public List<byte[]> getBarcodeFromPdf() {
+            return getBarcodeFromPdf("1-");
+        }
+
+        /**
+         * Collects the images of the selected pages of the first document that may contain a barcode, in a single
+         * pass. Form XObjects and tiny images are skipped, JPEG and JPEG 2000 images are returned as they are stored,
+         * without decoding. With a parallelism above one the pages are divided into that many groups, inspected
+         * concurrently on the executor set by {@link #withExecutor(Executor)} or on a pool created for the call.
+         *
+         * @param pages the pages to inspect, in the syntax of {@link SequenceList}, for example "1" or "1-3"
+         * @return the images in page order, an image shared by several pages is returned once
+         * @throws BarcodeGenerationFailedException if none of the pages has XObjects
+         * @throws InvalidFileContentException if the document can not be read
+         */
+        public List<byte[]> getBarcodeFromPdf(String pages) {
+            if (this.listOfDocs.size() < 1) return Collections.emptyList();
+            return BarcodeImageExtractor.extract(this.listOfDocs.get(0), pages, this.parallelism, this.executor);
+        }
+
         /**
          * Applies a watermark to a PDF file.
          *
-         * @param mergedFile The PDF file to watermark, represented as a byte array.
+         * @param mergedFile The PDF file to watermark.
          * @return The watermarked PDF file, represented as a byte array.
          * @throws InvalidFileContentException If an error occurs while processing the PDF file.
          */
 
-        private byte[] watermark(byte[] mergedFile) {
+        private byte[] watermark(PdfSource mergedFile) {
+            if (this.cache != null) {
+                return this.cache.get(PdfResultCache.key("watermark", outputProfile(), this.appendMode, this.watermark, mergedFile), () -> stampWatermark(mergedFile));
+            }
+            return stampWatermark(mergedFile);
+        }
+
+        private byte[] stampWatermark(PdfSource mergedFile) {
             ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
 
-            try {
-                PdfReader reader = new PdfReader(mergedFile);
-                int n = reader.getNumberOfPages();
-                PdfStamper stamper = new PdfStamper(reader, outputStream);
-                stamper.setRotateContents(false);
-
-                // text watermark
-                Font f = new Font(Font.FontFamily.COURIER, 84);
-                Phrase p = new Phrase("PISZKOZAT", f);
-
-                // transparency
-                PdfGState gs1 = new PdfGState();
-                gs1.setFillOpacity(0.2f);
-
-                // properties
-                PdfContentByte over;
-                Rectangle pagesize;
-                float x, y;
-
-                // loop over every page
-                for (int i = 1; i <= n; i++) {
-                    pagesize = reader.getPageSize(i);
-                    x = (pagesize.getLeft() + pagesize.getRight()) / 2;
-                    y = (pagesize.getTop() + pagesize.getBottom()) / 2;
-                    over = stamper.getOverContent(i);
-                    over.saveState();
-                    over.setGState(gs1);
-                    ColumnText.showTextAligned(over, Element.ALIGN_CENTER, p, x, y, 45);
-                    over.restoreState();
+            try (Measurement measurement = Measurement.start("watermark")) {
+                if (this.parallelStamping != null && !this.appendMode) {
+                    int numberOfPages = this.parallelStamping.applicablePageCount(mergedFile);
+                    if (numberOfPages >= 0) {
+                        // the probe reads the page tree, the ranges stamp and write their pages concurrently
+                        measurement.phase(PdfPhase.READ, numberOfPages, mergedFile.length());
+                        byte[] result = this.parallelStamping.stamp(mergedFile, numberOfPages, () -> new WatermarkStamp(this.watermark), false,
+                            outputProfile());
+                        measurement.phase(PdfPhase.WRITE, numberOfPages, result.length);
+                        measurement.stop(numberOfPages, result.length);
+                        return result;
+                    }
                 }
 
-                stamper.close();
-                reader.close();
+                PdfReader reader = mergedFile.openReader();
+                try {
+                    int numberOfPages = reader.getNumberOfPages();
+                    measurement.phase(PdfPhase.READ, numberOfPages, reader.getFileLength());
+                    PdfStamper stamper = IncrementalUpdate.openStamper(reader, outputStream, this.appendMode);
+                    outputProfile().apply(stamper);
+                    stamper.setRotateContents(false);
+                    watermarkProcessor(this.watermark).process(stamper);
+                    measurement.phase(PdfPhase.STAMP, numberOfPages, 0);
+                    stamper.close();
+                    measurement.phase(PdfPhase.WRITE, numberOfPages, outputStream.size());
+                    measurement.stop(numberOfPages, outputStream.size());
+                } finally {
+                    reader.close();
+                }
 
             } catch (IOException | DocumentException e) {
                 throw new InvalidFileContentException(e);
@@ -262,59 +698,155 @@ public class PdfTransform {
         /**
          * Merge multiple PDF files into a single PDF file.
          *
-         * @param files A list of byte arrays representing the PDF files to be merged.
+         * @param files A list of sources representing the PDF files to be merged.
          * @return A byte array representing the merged PDF file.
          */
 
-        private byte[] mergePdf(List<byte[]> files) {
-            List<PdfReader> readers =
-                files.stream()
-                    .map(file -> {
-                        PdfReader pdfReader = null;
+        private byte[] mergePdf(List<PdfSource> files) {
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            mergePdf(files, outputStream, false);
+            return outputStream.toByteArray();
+        }
+
+        /**
+         * Merge multiple PDF files into a single PDF file written to an output stream.
+         *
+         * @param files A list of sources representing the PDF files to be merged.
+         * @param outputStream The sink of the merged PDF file.
+         * @param watermark Whether every page is watermarked while it is imported.
+         */
+
+        private void mergePdf(List<PdfSource> files, OutputStream outputStream, boolean watermark) {
+            Watermark pageWatermark = watermark ? this.watermark : null;
+            if (this.executor == null) {
+                mergePdfReaders(files.stream().map(PdfTransformBuilder::openReader).iterator(), outputStream, pageWatermark, outputProfile());
+                return;
+            }
+
+            Iterator<PdfSource> pendingFiles = files.iterator();
+            Deque<CompletableFuture<PdfReader>> parsedReaders = new ArrayDeque<>();
+            int prefetch = this.parallelism;
+            Executor executor = this.executor;
+            try {
+                // polling drops the reference to every reader that has been handed over for copying
+                mergePdfReaders(new Iterator<PdfReader>() {
+                    @Override
+                    public boolean hasNext() {
+                        return !parsedReaders.isEmpty() || pendingFiles.hasNext();
+                    }
 
-                        try {
-                            pdfReader = new PdfReader(file);
-                        } catch (IOException e) {
-                            throw new InvalidFileContentException(e);
+                    @Override
+                    public PdfReader next() {
+                        // the current document plus the prefetched ones, the previous reader is already closed
+                        while (parsedReaders.size() <= prefetch && pendingFiles.hasNext()) {
+                            parsedReaders.add(openReaderAsync(pendingFiles.next(), executor));
                         }
+                        return Futures.join(parsedReaders.poll());
+                    }
+                }, outputStream, pageWatermark, outputProfile());
+            } finally {
+                // stops the parsing of the remaining inputs if copying failed and closes the parsed ones
+                parsedReaders.forEach(parsedReader -> {
+                    if (!parsedReader.cancel(false) && !parsedReader.isCompletedExceptionally()) {
+                        parsedReader.join().close();
+                    }
+                });
+            }
+        }
 
-                        return pdfReader;
-                    })
-                    .collect(Collectors.toList());
+        /**
+         * Parses a document on an executor. A reader finished after its future was cancelled is closed right away.
+         *
+         * @param file the document
+         * @param executor the executor of the parsing
+         * @return the future of the reader
+         */
 
-            return mergePdfReaders(readers);
+        private static CompletableFuture<PdfReader> openReaderAsync(PdfSource file, Executor executor) {
+            CompletableFuture<PdfReader> parsedReader = new CompletableFuture<>();
+            executor.execute(() -> {
+                if (parsedReader.isDone()) {
+                    return;
+                }
+                try {
+                    PdfReader reader = openReader(file);
+                    if (!parsedReader.complete(reader)) {
+                        reader.close();
+                    }
+                } catch (Throwable e) {
+                    parsedReader.completeExceptionally(e);
+                }
+            });
+            return parsedReader;
+        }
+
+        private static PdfReader openReader(PdfSource file) {
+            try {
+                return file.openReader();
+            } catch (IOException e) {
+                throw new InvalidFileContentException(e);
+            }
         }
 
         /**
-         * Merges multiple PDF files represented by PdfReader objects into a single PDF file.
+         * Merges multiple PDF files represented by PdfReader objects into a single PDF file. Every reader is freed and
+         * closed as soon as its pages are copied, so only the reader currently being copied is held.
          *
-         * @param readers A list of PdfReader objects representing the PDF files to be merged.
-         * @return A byte array representing the merged PDF file.
+         * @param readers PdfReader objects representing the PDF files to be merged, in the order of merging.
+         * @param outputStream The sink of the merged PDF file, it is not closed.
+         * @param watermark The watermark stamped on every page through a page stamp while it is imported, or null.
+         * @param profile The profile of the merged PDF file.
+         * @return The number of merged PDF files.
          * @throws InvalidFileContentException If an error occurs while processing the PDF files.
          */
 
-        private byte[] mergePdfReaders(List<PdfReader> readers) {
+        private static int mergePdfReaders(
+            Iterator<PdfReader> readers,
+            OutputStream outputStream,
+            Watermark watermark,
+            OutputProfile profile
+        ) {
             Document document = new Document();
 
-            try (ByteArrayOutputStream outputStream = new ByteArrayOutputStream()) {
-                PdfCopy copy = new PdfCopy(document, outputStream);
+            try (Measurement measurement = Measurement.start(watermark != null ? "mergeAndWatermark" : "merge")) {
+                PdfCopy copy = profile.newCopy(document, outputStream);
+                copy.setCloseStream(false);
+                // same coordinate space as the stamper of the standalone watermark
+                copy.setRotateContents(false);
                 document.open();
 
-                readers.forEach(reader -> {
-                    try {
+                WatermarkStamp watermarkStamp = watermark != null ? new WatermarkStamp(watermark) : null;
 
+                int merged = 0;
+                int pages = 0;
+                while (readers.hasNext()) {
+                    PdfReader reader = readers.next();
+                    measurement.phase(PdfPhase.READ, reader.getNumberOfPages(), reader.getFileLength());
+                    try {
+                        long written = copy.getOs().getCounter();
                         for (int i = 1; i <= reader.getNumberOfPages(); i++) {
-                            copy.addPage(copy.getImportedPage(reader, i));
+                            PdfImportedPage page = copy.getImportedPage(reader, i);
+                            if (watermarkStamp != null) {
+                                PdfCopy.PageStamp stamp = copy.createPageStamp(page);
+                                watermarkStamp.apply(stamp.getOverContent(), reader.getPageSize(i));
+                                stamp.alterContents();
+                            }
+                            copy.addPage(page);
                         }
-
-                    } catch (DocumentException | IOException e) {
-                        throw new InvalidFileContentException(e);
+                        copy.freeReader(reader);
+                        // the copy writes the pages of a document as soon as they are added
+                        measurement.phase(PdfPhase.WRITE, reader.getNumberOfPages(), copy.getOs().getCounter() - written);
+                        pages += reader.getNumberOfPages();
+                    } finally {
+                        reader.close();
                     }
-                });
+                    merged++;
+                }
 
                 document.close();
+                measurement.stop(pages, copy.getOs().getCounter());
 
-                return outputStream.toByteArray();
+                return merged;
             } catch (IOException | DocumentException e) {
                 throw new InvalidFileContentException(e);
             }
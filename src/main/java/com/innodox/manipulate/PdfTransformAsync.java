@@ -0,0 +1,127 @@
+package com.innodox.manipulate;
+
+import com.innodox.model.PdfAttachment;
+import com.innodox.model.PdfResult;
+import com.innodox.util.AsyncOperations;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * The operations of {@link PdfTransform.PdfTransformBuilder} returning {@link CompletableFuture}s instead of blocking
+ * the caller. A builder must not be changed until the future of its operation completes.
+ * <pre>
+ *   PdfTransformAsync transform = new PdfTransformAsync(executor, Duration.ofMinutes(1));
+ *   transform.mergeAndWatermark(PdfTransform.get(srcByte1).add(srcByte2))
+ *           .thenAccept(response::send);
+ * </pre>
+ *
+ * @see AsyncOperations
+ */
+public class PdfTransformAsync {
+
+    private final AsyncOperations operations;
+
+    /**
+     * Runs the operations on {@link AsyncOperations#defaultExecutor()} without a timeout.
+     */
+    public PdfTransformAsync() {
+        this(null, null);
+    }
+
+    /**
+     * @param executor the executor of the operations, null for {@link AsyncOperations#defaultExecutor()}
+     * @param timeout the timeout of every operation, null for no timeout
+     */
+    public PdfTransformAsync(Executor executor, Duration timeout) {
+        this(new AsyncOperations(executor, timeout));
+    }
+
+    public PdfTransformAsync(AsyncOperations operations) {
+        if (operations == null) throw new IllegalArgumentException("Operations are required");
+        this.operations = operations;
+    }
+
+    public AsyncOperations getOperations() {
+        return operations;
+    }
+
+    /**
+     * @param timeout the timeout of every operation, null for no timeout
+     * @return a facade on the same executor with another timeout
+     */
+    public PdfTransformAsync withTimeout(Duration timeout) {
+        return new PdfTransformAsync(operations.withTimeout(timeout));
+    }
+
+    /**
+     * @see PdfTransform.PdfTransformBuilder#merge()
+     */
+    public CompletableFuture<byte[]> merge(PdfTransform.PdfTransformBuilder transform) {
+        return operations.supply(transform::merge);
+    }
+
+    /**
+     * @see PdfTransform.PdfTransformBuilder#mergeAndWatermark()
+     */
+    public CompletableFuture<byte[]> mergeAndWatermark(PdfTransform.PdfTransformBuilder transform) {
+        return operations.supply(transform::mergeAndWatermark);
+    }
+
+    /**
+     * @see PdfTransform.PdfTransformBuilder#watermark()
+     */
+    public CompletableFuture<byte[]> watermark(PdfTransform.PdfTransformBuilder transform) {
+        return operations.supply(transform::watermark);
+    }
+
+    /**
+     * @see PdfTransform.PdfTransformBuilder#watermarkAll()
+     */
+    public CompletableFuture<List<byte[]>> watermarkAll(PdfTransform.PdfTransformBuilder transform) {
+        return operations.supply(transform::watermarkAll);
+    }
+
+    /**
+     * @see PdfTransform.PdfTransformBuilder#tryWatermarkAll()
+     */
+    public CompletableFuture<List<PdfResult>> tryWatermarkAll(PdfTransform.PdfTransformBuilder transform) {
+        return operations.supply(transform::tryWatermarkAll);
+    }
+
+    /**
+     * @see PdfTransform.PdfTransformBuilder#addAttachments(byte[], List)
+     */
+    public CompletableFuture<byte[]> addAttachments(
+        PdfTransform.PdfTransformBuilder transform,
+        byte[] document,
+        List<PdfAttachment> attachments
+    ) {
+        return operations.supply(() -> transform.addAttachments(document, attachments));
+    }
+
+    /**
+     * @see PdfTransform.PdfTransformBuilder#addAttachments(Path, List)
+     */
+    public CompletableFuture<byte[]> addAttachments(
+        PdfTransform.PdfTransformBuilder transform,
+        Path document,
+        List<PdfAttachment> attachments
+    ) {
+        return operations.supply(() -> transform.addAttachments(document, attachments));
+    }
+
+    /**
+     * @see PdfTransform.PdfTransformBuilder#getBarcodeFromPdf(String)
+     */
+    public CompletableFuture<List<byte[]>> getBarcodeFromPdf(PdfTransform.PdfTransformBuilder transform, String pages) {
+        return operations.supply(() -> transform.getBarcodeFromPdf(pages));
+    }
+
+    public String toString() {
+        return "PdfTransformAsync(operations=" + this.operations + ")";
+    }
+}
@@ -0,0 +1,112 @@
+package com.innodox.manipulate;
+
+import com.itextpdf.text.Font;
+import com.itextpdf.text.Phrase;
+import com.itextpdf.text.pdf.PdfGState;
+
+/**
+ * Appearance of the text watermark stamped by {@link PdfTransform.PdfTransformBuilder}.
+ * <p>
+ * The font and the transparency state are created once per instance and shared by every document the instance is
+ * stamped on, so reuse instances instead of building a new one for every call. Instances are immutable and can be
+ * shared between threads.
+ */
+public class Watermark {
+
+    /**
+     * The default "PISZKOZAT" watermark.
+     */
+    public static final Watermark DEFAULT = Watermark.builder().build();
+
+    private final String text;
+    private final float fontSize;
+    private final float angle;
+    private final float opacity;
+
+    private final Phrase phrase;
+    private final PdfGState state;
+
+    public Watermark(String text, float fontSize, float angle, float opacity) {
+        this.text = text;
+        this.fontSize = fontSize;
+        this.angle = angle;
+        this.opacity = opacity;
+
+        // text watermark
+        this.phrase = new Phrase(text, new Font(Font.FontFamily.COURIER, fontSize));
+
+        // transparency
+        this.state = new PdfGState();
+        this.state.setFillOpacity(opacity);
+    }
+
+    public static WatermarkBuilder builder() {
+        return new WatermarkBuilder();
+    }
+
+    public String getText() {
+        return this.text;
+    }
+
+    public float getFontSize() {
+        return this.fontSize;
+    }
+
+    public float getAngle() {
+        return this.angle;
+    }
+
+    public float getOpacity() {
+        return this.opacity;
+    }
+
+    Phrase getPhrase() {
+        return this.phrase;
+    }
+
+    PdfGState getState() {
+        return this.state;
+    }
+
+    public String toString() {
+        return "Watermark(text=" + this.text + ", fontSize=" + this.fontSize + ", angle=" + this.angle + ", opacity=" + this.opacity + ")";
+    }
+
+    public static class WatermarkBuilder {
+        private String text = "PISZKOZAT";
+        private float fontSize = 84;
+        private float angle = 45;
+        private float opacity = 0.2f;
+
+        WatermarkBuilder() {
+        }
+
+        public WatermarkBuilder text(String text) {
+            this.text = text;
+            return this;
+        }
+
+        public WatermarkBuilder fontSize(float fontSize) {
+            this.fontSize = fontSize;
+            return this;
+        }
+
+        public WatermarkBuilder angle(float angle) {
+            this.angle = angle;
+            return this;
+        }
+
+        public WatermarkBuilder opacity(float opacity) {
+            this.opacity = opacity;
+            return this;
+        }
+
+        public Watermark build() {
+            return new Watermark(this.text, this.fontSize, this.angle, this.opacity);
+        }
+
+        public String toString() {
+            return "Watermark.WatermarkBuilder(text=" + this.text + ", fontSize=" + this.fontSize + ", angle=" + this.angle + ", opacity=" + this.opacity + ")";
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.innodox.manipulate;
+
+import com.innodox.util.PageOverlay;
+import com.itextpdf.text.Element;
+import com.itextpdf.text.Rectangle;
+import com.itextpdf.text.pdf.ColumnText;
+import com.itextpdf.text.pdf.PdfContentByte;
+import com.itextpdf.text.pdf.PdfTemplate;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Stamps a {@link Watermark} on the pages of a single document. The watermark is rendered once per distinct page size
+ * into a form XObject and every page only references it, so the text drawing operators are written once per size
+ * instead of once per page.
+ * <p>
+ * A stamp belongs to the writer of one document and must not be shared between documents or threads.
+ */
+class WatermarkStamp implements PageOverlay {
+
+    private final Watermark watermark;
+    private final Map<String, PdfTemplate> templates = new HashMap<>();
+
+    WatermarkStamp(Watermark watermark) {
+        this.watermark = watermark;
+    }
+
+    /**
+     * Draws the watermark diagonally across the center of a page.
+     *
+     * @param over the content drawn over the page
+     * @param pagesize the size of the page
+     */
+    @Override
+    public void apply(PdfContentByte over, Rectangle pagesize) {
+        float width = pagesize.getWidth();
+        float height = pagesize.getHeight();
+        PdfTemplate template = templates.computeIfAbsent(width + "x" + height, size -> createTemplate(over, width, height));
+        over.addTemplate(template, pagesize.getLeft(), pagesize.getBottom());
+    }
+
+    private PdfTemplate createTemplate(PdfContentByte over, float width, float height) {
+        PdfTemplate template = over.createTemplate(width, height);
+        template.saveState();
+        template.setGState(watermark.getState());
+        ColumnText.showTextAligned(template, Element.ALIGN_CENTER, watermark.getPhrase(), width / 2, height / 2, watermark.getAngle());
+        template.restoreState();
+        return template;
+    }
+}
@@ -0,0 +1,101 @@
+package com.innodox.metrics;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Sample {@link PdfInstrumentation} that aggregates the measurements in memory, one {@link LatencyHistogram} per
+ * operation, one per phase of an operation and one for the failed runs of an operation. Read the histograms periodically to export them to a metrics system.
+ * <pre>
+ *   HistogramInstrumentation histograms = new HistogramInstrumentation();
+ *   Instrumentation.install(histograms);
+ *   ...
+ *   histograms.getOperation("addFoldingLines").getPercentileNanos(99);
+ *   histograms.getPhase("addFoldingLines", PdfPhase.STAMP).getMeanNanos();
+ *   histograms.getEventCount("getPageCount", "fallback");
+ *   histograms.getFailures("addFoldingLines").getCount();
+ * </pre>
+ */
+public class HistogramInstrumentation implements PdfInstrumentation {
+
+    private final Map<String, LatencyHistogram> operations = new ConcurrentHashMap<>();
+    private final Map<String, LatencyHistogram> phases = new ConcurrentHashMap<>();
+    private final Map<String, LatencyHistogram> failures = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> events = new ConcurrentHashMap<>();
+
+    @Override
+    public void phase(String operation, PdfPhase phase, int pages, long bytes, long elapsedNanos) {
+        phases.computeIfAbsent(phaseKey(operation, phase), key -> new LatencyHistogram())
+                .record(elapsedNanos, pages, phase == PdfPhase.READ ? bytes : 0, phase == PdfPhase.WRITE ? bytes : 0);
+    }
+
+    @Override
+    public void operation(String operation, int pages, long bytesIn, long bytesOut, long elapsedNanos) {
+        operations.computeIfAbsent(operation, key -> new LatencyHistogram()).record(elapsedNanos, pages, bytesIn, bytesOut);
+    }
+
+    @Override
+    public void failed(String operation, long bytesIn, long elapsedNanos) {
+        failures.computeIfAbsent(operation, key -> new LatencyHistogram()).record(elapsedNanos, 0, bytesIn, 0);
+    }
+
+    @Override
+    public void event(String operation, String event) {
+        events.computeIfAbsent(operation + "." + event, key -> new LongAdder()).increment();
+    }
+
+    /**
+     * @param operation the name of the operation
+     * @return the histogram of the operation, empty if it was never completed
+     */
+    public LatencyHistogram getOperation(String operation) {
+        LatencyHistogram histogram = operations.get(operation);
+        return histogram != null ? histogram : new LatencyHistogram();
+    }
+
+    /**
+     * @param operation the name of the operation
+     * @return the histogram of the failed runs of the operation, empty if it never failed
+     */
+    public LatencyHistogram getFailures(String operation) {
+        LatencyHistogram histogram = failures.get(operation);
+        return histogram != null ? histogram : new LatencyHistogram();
+    }
+
+    /**
+     * @param operation the name of the operation
+     * @param phase the phase
+     * @return the histogram of the phase of the operation, empty if it was never completed
+     */
+    public LatencyHistogram getPhase(String operation, PdfPhase phase) {
+        LatencyHistogram histogram = phases.get(phaseKey(operation, phase));
+        return histogram != null ? histogram : new LatencyHistogram();
+    }
+
+    /**
+     * @param operation the name of the operation
+     * @param event the name of the event
+     * @return how often the event was reported for the operation
+     */
+    public long getEventCount(String operation, String event) {
+        LongAdder count = events.get(operation + "." + event);
+        return count != null ? count.sum() : 0;
+    }
+
+    /**
+     * @return the histograms of the operations by operation name
+     */
+    public Map<String, LatencyHistogram> getOperations() {
+        return Collections.unmodifiableMap(operations);
+    }
+
+    private static String phaseKey(String operation, PdfPhase phase) {
+        return operation + "." + phase;
+    }
+
+    public String toString() {
+        return "HistogramInstrumentation(operations=" + operations + ")";
+    }
+}
@@ -0,0 +1,37 @@
+package com.innodox.metrics;
+
+/**
+ * Holds the {@link PdfInstrumentation} of the library. No instrumentation is installed by default, in that case the
+ * operations do not even read the clock.
+ */
+public final class Instrumentation {
+
+    private static volatile PdfInstrumentation installed;
+
+    private Instrumentation() {
+
+    }
+
+    /**
+     * Installs an instrumentation for every following operation, replacing the previous one.
+     *
+     * @param instrumentation the instrumentation, null to remove it
+     */
+    public static void install(PdfInstrumentation instrumentation) {
+        installed = instrumentation;
+    }
+
+    /**
+     * Removes the installed instrumentation.
+     */
+    public static void uninstall() {
+        installed = null;
+    }
+
+    /**
+     * @return the installed instrumentation, null if there is none
+     */
+    public static PdfInstrumentation get() {
+        return installed;
+    }
+}
@@ -0,0 +1,83 @@
+package com.innodox.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Thread safe histogram of durations with power of two buckets: bucket n counts the durations of less than 2^n
+ * nanoseconds that do not fit in bucket n - 1. Percentiles are therefore upper bounds, at most twice the exact value.
+ */
+public class LatencyHistogram {
+
+    private final AtomicLongArray buckets = new AtomicLongArray(64);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAdder pages = new LongAdder();
+    private final LongAdder bytesIn = new LongAdder();
+    private final LongAdder bytesOut = new LongAdder();
+
+    void record(long elapsedNanos, int pages, long bytesIn, long bytesOut) {
+        long nanos = Math.max(0, elapsedNanos);
+        buckets.incrementAndGet(Math.min(63, 64 - Long.numberOfLeadingZeros(nanos)));
+        count.increment();
+        totalNanos.add(nanos);
+        this.pages.add(pages);
+        this.bytesIn.add(bytesIn);
+        this.bytesOut.add(bytesOut);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getTotalNanos() {
+        return totalNanos.sum();
+    }
+
+    public long getPages() {
+        return pages.sum();
+    }
+
+    public long getBytesIn() {
+        return bytesIn.sum();
+    }
+
+    public long getBytesOut() {
+        return bytesOut.sum();
+    }
+
+    /**
+     * @return the mean duration in nanoseconds, 0 if nothing was recorded
+     */
+    public long getMeanNanos() {
+        long n = getCount();
+        return n == 0 ? 0 : getTotalNanos() / n;
+    }
+
+    /**
+     * @param percentile the percentile between 0 and 100
+     * @return an upper bound of the duration in nanoseconds at the percentile, 0 if nothing was recorded
+     */
+    public long getPercentileNanos(double percentile) {
+        if (percentile < 0 || percentile > 100) throw new IllegalArgumentException("Percentile must be between 0 and 100: " + percentile);
+        long n = getCount();
+        if (n == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(n * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < buckets.length(); i++) {
+            seen += buckets.get(i);
+            if (seen >= rank) {
+                return i == 63 ? Long.MAX_VALUE : (1L << i) - 1;
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+
+    public String toString() {
+        return "LatencyHistogram(count=" + getCount() + ", meanNanos=" + getMeanNanos() + ", p50Nanos=" + getPercentileNanos(50)
+                + ", p99Nanos=" + getPercentileNanos(99) + ", pages=" + getPages() + ", bytesIn=" + getBytesIn()
+                + ", bytesOut=" + getBytesOut() + ")";
+    }
+}
@@ -0,0 +1,115 @@
+package com.innodox.metrics;
+
+/**
+ * Measures a single run of an operation and reports it to the installed {@link PdfInstrumentation}. Every phase is
+ * timed from the end of the previous phase, or from the start of the operation.
+ * <p>
+ * Without an installed instrumentation {@link #start(String)} returns a shared disabled measurement whose methods do
+ * nothing. A measurement belongs to the thread that started it.
+ * <p>
+ * Operations start their measurement in a try-with-resources block, so that an operation that ends with an exception
+ * before {@link #stop(int, long)} is reported as failed when the measurement is closed.
+ */
+public final class Measurement implements AutoCloseable {
+
+    private static final Measurement DISABLED = new Measurement(null, null, 0);
+
+    private final PdfInstrumentation instrumentation;
+    private final String operation;
+    private final long start;
+    private long mark;
+    private long bytesIn;
+    private boolean stopped;
+
+    private Measurement(PdfInstrumentation instrumentation, String operation, long start) {
+        this.instrumentation = instrumentation;
+        this.operation = operation;
+        this.start = start;
+        this.mark = start;
+    }
+
+    /**
+     * Starts measuring an operation.
+     *
+     * @param operation the name of the operation
+     * @return the measurement
+     */
+    public static Measurement start(String operation) {
+        PdfInstrumentation instrumentation = Instrumentation.get();
+        if (instrumentation == null) {
+            return DISABLED;
+        }
+        return new Measurement(instrumentation, operation, System.nanoTime());
+    }
+
+    public boolean isEnabled() {
+        return this.instrumentation != null;
+    }
+
+    /**
+     * Reports a completed phase. The bytes read by a {@link PdfPhase#READ} phase are added to the input size of the
+     * operation.
+     *
+     * @param phase the phase
+     * @param pages the number of pages processed by the phase
+     * @param bytes the bytes read or written by the phase
+     */
+    public void phase(PdfPhase phase, int pages, long bytes) {
+        if (this.instrumentation == null) {
+            return;
+        }
+        long now = System.nanoTime();
+        if (phase == PdfPhase.READ) {
+            this.bytesIn += bytes;
+        }
+        this.instrumentation.phase(this.operation, phase, pages, bytes, now - this.mark);
+        this.mark = now;
+    }
+
+    /**
+     * Adds input bytes that are not read by a measured {@link PdfPhase#READ} phase, for example by parallel tasks.
+     *
+     * @param bytes the bytes read
+     */
+    public void input(long bytes) {
+        this.bytesIn += bytes;
+    }
+
+    /**
+     * Reports that the operation took one of several paths.
+     *
+     * @param event the name of the event
+     */
+    public void event(String event) {
+        if (this.instrumentation == null) {
+            return;
+        }
+        this.instrumentation.event(this.operation, event);
+    }
+
+    /**
+     * Reports the completed operation.
+     *
+     * @param pages the number of pages processed
+     * @param bytesOut the size of the output
+     */
+    public void stop(int pages, long bytesOut) {
+        if (this.instrumentation == null || this.stopped) {
+            return;
+        }
+        this.stopped = true;
+        this.instrumentation.operation(this.operation, pages, this.bytesIn, bytesOut, System.nanoTime() - this.start);
+    }
+
+    /**
+     * Reports the operation as failed unless it was stopped.
+     */
+    @Override
+    public void close() {
+        if (this.instrumentation == null || this.stopped) {
+            return;
+        }
+        this.stopped = true;
+        this.instrumentation.failed(this.operation, this.bytesIn, System.nanoTime() - this.start);
+    }
+}
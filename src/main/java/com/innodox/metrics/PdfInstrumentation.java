@@ -0,0 +1,56 @@
+package com.innodox.metrics;
+
+/**
+ * Receives the measurements of the PDF operations of the library. Install an implementation with
+ * {@link Instrumentation#install(PdfInstrumentation)} to connect the library to a metrics system.
+ * <p>
+ * Implementations are called from every thread that runs an operation and must be thread safe. They should return
+ * quickly, since they are called synchronously on the processing thread.
+ */
+public interface PdfInstrumentation {
+
+    /**
+     * Called when a phase of an operation completes.
+     *
+     * @param operation the name of the operation, for example "addFoldingLines"
+     * @param phase the phase
+     * @param pages the number of pages processed by the phase
+     * @param bytes the bytes read by a {@link PdfPhase#READ} phase or written by a {@link PdfPhase#WRITE} phase, 0 for
+     *              other phases
+     * @param elapsedNanos the duration of the phase
+     */
+    void phase(String operation, PdfPhase phase, int pages, long bytes, long elapsedNanos);
+
+    /**
+     * Called when an operation completes successfully.
+     *
+     * @param operation the name of the operation
+     * @param pages the number of pages processed
+     * @param bytesIn the size of the input documents
+     * @param bytesOut the size of the output
+     * @param elapsedNanos the duration of the operation
+     */
+    void operation(String operation, int pages, long bytesIn, long bytesOut, long elapsedNanos);
+
+    /**
+     * Called when an operation ends with an exception. Does nothing by default.
+     *
+     * @param operation the name of the operation
+     * @param bytesIn the size of the input documents read before the failure
+     * @param elapsedNanos the duration of the operation until the failure
+     */
+    default void failed(String operation, long bytesIn, long elapsedNanos) {
+
+    }
+
+    /**
+     * Called when an operation takes one of several paths, for example "fastPath" or "fallback" of "getPageCount".
+     * Does nothing by default.
+     *
+     * @param operation the name of the operation
+     * @param event the name of the event
+     */
+    default void event(String operation, String event) {
+
+    }
+}
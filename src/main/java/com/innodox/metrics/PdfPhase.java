@@ -0,0 +1,19 @@
+package com.innodox.metrics;
+
+/**
+ * The phases of a PDF operation.
+ */
+public enum PdfPhase {
+    /**
+     * Parsing the input document.
+     */
+    READ,
+    /**
+     * Drawing on the pages of a document, like watermarks, folding lines or headers.
+     */
+    STAMP,
+    /**
+     * Serializing the output document.
+     */
+    WRITE
+}
@@ -1,7 +1,17 @@
 package com.innodox.model;
 
+import java.io.InputStream;
+import java.nio.file.Path;
+
+/**
+ * A file to embed into a PDF. The content is given either as {@link #getData() byte array}, as {@link #getFile() file}
+ * read when the attachment is embedded, or as {@link #getInputStream() stream} read once and closed when the
+ * attachment is embedded.
+ */
 public class PdfAttachment {
     private byte[] data;
+    private Path file;
+    private InputStream inputStream;
     private String filename;
     private String description;
 
@@ -11,6 +21,14 @@ public class PdfAttachment {
         this.description = description;
     }
 
+    public PdfAttachment(byte[] data, Path file, InputStream inputStream, String filename, String description) {
+        this.data = data;
+        this.file = file;
+        this.inputStream = inputStream;
+        this.filename = filename;
+        this.description = description;
+    }
+
     public PdfAttachment() {
     }
 
@@ -22,6 +40,14 @@ public class PdfAttachment {
         return this.data;
     }
 
+    public Path getFile() {
+        return this.file;
+    }
+
+    public InputStream getInputStream() {
+        return this.inputStream;
+    }
+
     public String getFilename() {
         return this.filename;
     }
@@ -34,6 +60,14 @@ public class PdfAttachment {
         this.data = data;
     }
 
+    public void setFile(Path file) {
+        this.file = file;
+    }
+
+    public void setInputStream(InputStream inputStream) {
+        this.inputStream = inputStream;
+    }
+
     public void setFilename(String filename) {
         this.filename = filename;
     }
@@ -48,6 +82,13 @@ public class PdfAttachment {
         final PdfAttachment other = (PdfAttachment) o;
         if (!other.canEqual((Object) this)) return false;
         if (!java.util.Arrays.equals(this.getData(), other.getData())) return false;
+        final Object this$file = this.getFile();
+        final Object other$file = other.getFile();
+        if (this$file == null ? other$file != null : !this$file.equals(other$file)) return false;
+        final Object this$inputStream = this.getInputStream();
+        final Object other$inputStream = other.getInputStream();
+        if (this$inputStream == null ? other$inputStream != null : !this$inputStream.equals(other$inputStream))
+            return false;
         final Object this$filename = this.getFilename();
         final Object other$filename = other.getFilename();
         if (this$filename == null ? other$filename != null : !this$filename.equals(other$filename)) return false;
@@ -66,6 +107,10 @@ public class PdfAttachment {
         final int PRIME = 59;
         int result = 1;
         result = result * PRIME + java.util.Arrays.hashCode(this.getData());
+        final Object $file = this.getFile();
+        result = result * PRIME + ($file == null ? 43 : $file.hashCode());
+        final Object $inputStream = this.getInputStream();
+        result = result * PRIME + ($inputStream == null ? 43 : $inputStream.hashCode());
         final Object $filename = this.getFilename();
         result = result * PRIME + ($filename == null ? 43 : $filename.hashCode());
         final Object $description = this.getDescription();
@@ -74,11 +119,13 @@ public class PdfAttachment {
     }
 
     public String toString() {
-        return "PdfAttachment(data=" + java.util.Arrays.toString(this.getData()) + ", filename=" + this.getFilename() + ", description=" + this.getDescription() + ")";
+        return "PdfAttachment(data=" + java.util.Arrays.toString(this.getData()) + ", file=" + this.getFile() + ", inputStream=" + this.getInputStream() + ", filename=" + this.getFilename() + ", description=" + this.getDescription() + ")";
     }
 
     public static class PdfAttachmentBuilder {
         private byte[] data;
+        private Path file;
+        private InputStream inputStream;
         private String filename;
         private String description;
 
@@ -90,6 +137,16 @@ public class PdfAttachment {
             return this;
         }
 
+        public PdfAttachmentBuilder file(Path file) {
+            this.file = file;
+            return this;
+        }
+
+        public PdfAttachmentBuilder inputStream(InputStream inputStream) {
+            this.inputStream = inputStream;
+            return this;
+        }
+
         public PdfAttachmentBuilder filename(String filename) {
             this.filename = filename;
             return this;
@@ -101,11 +158,11 @@ public class PdfAttachment {
         }
 
         public PdfAttachment build() {
-            return new PdfAttachment(this.data, this.filename, this.description);
+            return new PdfAttachment(this.data, this.file, this.inputStream, this.filename, this.description);
         }
 
         public String toString() {
-            return "PdfAttachment.PdfAttachmentBuilder(data=" + java.util.Arrays.toString(this.data) + ", filename=" + this.filename + ", description=" + this.description + ")";
+            return "PdfAttachment.PdfAttachmentBuilder(data=" + java.util.Arrays.toString(this.data) + ", file=" + this.file + ", inputStream=" + this.inputStream + ", filename=" + this.filename + ", description=" + this.description + ")";
         }
     }
 }
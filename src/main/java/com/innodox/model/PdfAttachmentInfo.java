@@ -0,0 +1,122 @@
+package com.innodox.model;
+
+import java.io.IOException;
+import java.util.Calendar;
+
+/**
+ * Describes an embedded file of a PDF by the entries of its file specification and embedded file stream dictionary,
+ * without its content. The content is read from the document on the first call of {@link #getData()}.
+ */
+public class PdfAttachmentInfo {
+    private final String name;
+    private final String description;
+    private final String subtype;
+    private final long size;
+    private final long compressedSize;
+    private final String checksum;
+    private final Calendar modificationDate;
+    private final DataLoader loader;
+    private volatile byte[] data;
+
+    public PdfAttachmentInfo(
+        String name,
+        String description,
+        String subtype,
+        long size,
+        long compressedSize,
+        String checksum,
+        Calendar modificationDate,
+        DataLoader loader
+    ) {
+        this.name = name;
+        this.description = description;
+        this.subtype = subtype;
+        this.size = size;
+        this.compressedSize = compressedSize;
+        this.checksum = checksum;
+        this.modificationDate = modificationDate;
+        this.loader = loader;
+    }
+
+    /**
+     * @return the attachment name as stored in the embedded files name tree
+     */
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * @return the description of the file specification, null if there is none
+     */
+    public String getDescription() {
+        return this.description;
+    }
+
+    /**
+     * @return the MIME type, for example "application/xml", null if the document does not declare it
+     */
+    public String getSubtype() {
+        return this.subtype;
+    }
+
+    /**
+     * @return the uncompressed size in bytes as declared by the document, -1 if it is not declared
+     */
+    public long getSize() {
+        return this.size;
+    }
+
+    /**
+     * @return the size in bytes of the stored, usually compressed, stream
+     */
+    public long getCompressedSize() {
+        return this.compressedSize;
+    }
+
+    /**
+     * @return the hex encoded MD5 checksum of the content as declared by the document, null if it is not declared
+     */
+    public String getChecksum() {
+        return this.checksum;
+    }
+
+    /**
+     * @return the modification date as declared by the document, null if it is not declared
+     */
+    public Calendar getModificationDate() {
+        return this.modificationDate;
+    }
+
+    /**
+     * Reads and decodes the content on the first call, later calls return the same array.
+     *
+     * @return the decoded content
+     * @throws IOException if the document can not be read
+     */
+    public byte[] getData() throws IOException {
+        byte[] result = this.data;
+        if (result == null) {
+            synchronized (this) {
+                result = this.data;
+                if (result == null) {
+                    result = this.loader.load();
+                    this.data = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    public String toString() {
+        return "PdfAttachmentInfo(name=" + this.name + ", subtype=" + this.subtype + ", size=" + this.size
+            + ", compressedSize=" + this.compressedSize + ", checksum=" + this.checksum + ")";
+    }
+
+    /**
+     * Reads the content of an attachment.
+     */
+    @FunctionalInterface
+    public interface DataLoader {
+        byte[] load() throws IOException;
+    }
+}
@@ -0,0 +1,55 @@
+package com.innodox.model;
+
+/**
+ * Outcome of processing a single document of a batch: either the processed document or the failure that prevented it.
+ */
+public class PdfResult {
+    private final byte[] data;
+    private final RuntimeException error;
+
+    private PdfResult(byte[] data, RuntimeException error) {
+        this.data = data;
+        this.error = error;
+    }
+
+    public static PdfResult success(byte[] data) {
+        return new PdfResult(data, null);
+    }
+
+    public static PdfResult failure(RuntimeException error) {
+        return new PdfResult(null, error);
+    }
+
+    public boolean isSuccess() {
+        return this.error == null;
+    }
+
+    /**
+     * @return the processed document, null if processing failed
+     */
+    public byte[] getData() {
+        return this.data;
+    }
+
+    /**
+     * @return the failure, null if processing succeeded
+     */
+    public RuntimeException getError() {
+        return this.error;
+    }
+
+    /**
+     * @return the processed document
+     * @throws RuntimeException the failure if processing failed
+     */
+    public byte[] getDataOrThrow() {
+        if (this.error != null) {
+            throw this.error;
+        }
+        return this.data;
+    }
+
+    public String toString() {
+        return "PdfResult(data=" + (this.data == null ? null : this.data.length + " bytes") + ", error=" + this.error + ")";
+    }
+}
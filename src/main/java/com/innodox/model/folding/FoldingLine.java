@@ -2,8 +2,8 @@ package com.innodox.model.folding;
 
 public class FoldingLine {
 
-    private Point start;
-    private Point end;
+    private final Point start;
+    private final Point end;
 
     public FoldingLine(float startX, float startY, float endX, float endY) {
         this.start = Point.builder()
@@ -28,6 +28,22 @@ public class FoldingLine {
         return this.end;
     }
 
+    public float getStartX() {
+        return this.start.getXCoordinate();
+    }
+
+    public float getStartY() {
+        return this.start.getYCoordinate();
+    }
+
+    public float getEndX() {
+        return this.end.getXCoordinate();
+    }
+
+    public float getEndY() {
+        return this.end.getYCoordinate();
+    }
+
     public static class FoldingLineBuilder {
         private float startX;
         private float startY;
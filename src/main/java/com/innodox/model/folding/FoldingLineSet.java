@@ -0,0 +1,155 @@
+package com.innodox.model.folding;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An immutable set of folding lines compiled into a packed array of coordinates, four values (startX, startY, endX,
+ * endY) per line.
+ * <p>
+ * Coordinates are either absolute, in points from the origin of the page, or relative, as fractions of the page width
+ * and height measured from the lower left corner of the page. Relative sets fit every page format, the absolute
+ * coordinates of a relative set are computed once per page size and reused afterwards.
+ * <p>
+ * The predefined layouts are compiled once and can be shared freely between threads and documents. Sets compiled
+ * from equal lists of folding lines are shared as well, so that callers passing the same lines on every call reuse
+ * the coordinates resolved for their page sizes.
+ */
+public final class FoldingLineSet {
+
+    /**
+     * Fold marks for a DL envelope: the sheet is folded in thirds.
+     */
+    public static final FoldingLineSet DL = relative(
+            0f, 2f / 3, 0.035f, 2f / 3,
+            0f, 1f / 3, 0.035f, 1f / 3);
+
+    /**
+     * Fold mark for a C5 envelope: the sheet is folded in half. A C4 envelope takes the sheet unfolded, so it needs no
+     * marks.
+     */
+    public static final FoldingLineSet C5 = relative(
+            0f, 0.5f, 0.035f, 0.5f);
+
+    private static final int MAX_CACHED_PAGE_SIZES = 64;
+    private static final int MAX_CACHED_LISTS = 64;
+    private static final Map<FoldingLineSet, FoldingLineSet> COMPILED = new ConcurrentHashMap<>();
+
+    private final float[] coordinates;
+    private final boolean relative;
+    private final Map<String, float[]> resolved = new ConcurrentHashMap<>();
+
+    private FoldingLineSet(float[] coordinates, boolean relative) {
+        if (coordinates.length % 4 != 0) {
+            throw new IllegalArgumentException("Four coordinates are required per line, got " + coordinates.length);
+        }
+        this.coordinates = coordinates;
+        this.relative = relative;
+    }
+
+    /**
+     * Compiles a list of folding lines with absolute coordinates. Equal lists return the same set, as long as no more
+     * than 64 different lists have been compiled.
+     *
+     * @param foldingLines the lines
+     * @return the compiled set
+     */
+    public static FoldingLineSet of(List<FoldingLine> foldingLines) {
+        float[] coordinates = new float[foldingLines.size() * 4];
+        int i = 0;
+        for (FoldingLine foldingLine : foldingLines) {
+            coordinates[i++] = foldingLine.getStartX();
+            coordinates[i++] = foldingLine.getStartY();
+            coordinates[i++] = foldingLine.getEndX();
+            coordinates[i++] = foldingLine.getEndY();
+        }
+        FoldingLineSet compiled = new FoldingLineSet(coordinates, false);
+        FoldingLineSet cached = COMPILED.get(compiled);
+        if (cached != null) {
+            return cached;
+        }
+        if (COMPILED.size() < MAX_CACHED_LISTS) {
+            cached = COMPILED.putIfAbsent(compiled, compiled);
+        }
+        return cached != null ? cached : compiled;
+    }
+
+    /**
+     * @param coordinates startX, startY, endX, endY of every line in points
+     * @return the compiled set
+     */
+    public static FoldingLineSet absolute(float... coordinates) {
+        return new FoldingLineSet(coordinates.clone(), false);
+    }
+
+    /**
+     * @param coordinates startX, startY, endX, endY of every line as fractions of the page width and height
+     * @return the compiled set
+     */
+    public static FoldingLineSet relative(float... coordinates) {
+        return new FoldingLineSet(coordinates.clone(), true);
+    }
+
+    public boolean isRelative() {
+        return this.relative;
+    }
+
+    /**
+     * @return the number of lines
+     */
+    public int size() {
+        return this.coordinates.length / 4;
+    }
+
+    /**
+     * Returns the absolute coordinates of the lines on a page. The returned array is shared and must not be modified.
+     *
+     * @param left   the left edge of the page
+     * @param bottom the bottom edge of the page
+     * @param width  the width of the page
+     * @param height the height of the page
+     * @return startX, startY, endX, endY of every line in points
+     */
+    public float[] resolve(float left, float bottom, float width, float height) {
+        if (!this.relative) {
+            return this.coordinates;
+        }
+        String key = left + "," + bottom + "," + width + "x" + height;
+        float[] cached = this.resolved.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        float[] absolute = new float[this.coordinates.length];
+        for (int i = 0; i < absolute.length; i += 2) {
+            absolute[i] = left + this.coordinates[i] * width;
+            absolute[i + 1] = bottom + this.coordinates[i + 1] * height;
+        }
+        if (this.resolved.size() < MAX_CACHED_PAGE_SIZES) {
+            this.resolved.put(key, absolute);
+        }
+        return absolute;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof FoldingLineSet)) {
+            return false;
+        }
+        FoldingLineSet other = (FoldingLineSet) o;
+        return this.relative == other.relative && Arrays.equals(this.coordinates, other.coordinates);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Arrays.hashCode(this.coordinates) + (this.relative ? 1 : 0);
+    }
+
+    public String toString() {
+        return "FoldingLineSet(coordinates=" + Arrays.toString(this.coordinates) + ", relative=" + this.relative + ")";
+    }
+}
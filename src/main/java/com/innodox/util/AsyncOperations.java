@@ -0,0 +1,181 @@
+package com.innodox.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs blocking operations on an executor and exposes them as {@link CompletableFuture}s, the base of
+ * {@link PdfUtilAsync} and {@link com.innodox.manipulate.PdfTransformAsync}.
+ * <p>
+ * A future that is cancelled or times out before its operation started skips the operation. An operation that is
+ * already running is not interrupted, iText does not react to interrupts, its result is discarded instead.
+ */
+public class AsyncOperations {
+
+    private static final Logger log = LoggerFactory.getLogger(AsyncOperations.class);
+
+    private static volatile Executor defaultExecutor;
+
+    private final Executor executor;
+    private final Duration timeout;
+
+    /**
+     * @param executor the executor of the operations, null for {@link #defaultExecutor()}
+     * @param timeout the timeout of every operation, null for no timeout
+     */
+    public AsyncOperations(Executor executor, Duration timeout) {
+        if (timeout != null && (timeout.isNegative() || timeout.isZero())) {
+            throw new IllegalArgumentException("Timeout must be positive: " + timeout);
+        }
+        this.executor = executor != null ? executor : defaultExecutor();
+        this.timeout = timeout;
+    }
+
+    /**
+     * Returns the executor shared by the asynchronous operations that are not given one. On Java 21 and later every
+     * operation runs on its own virtual thread, on earlier versions on a pool of daemon threads, one per processor.
+     *
+     * @return the shared executor
+     */
+    public static Executor defaultExecutor() {
+        Executor executor = defaultExecutor;
+        if (executor == null) {
+            synchronized (AsyncOperations.class) {
+                executor = defaultExecutor;
+                if (executor == null) {
+                    executor = createDefaultExecutor();
+                    defaultExecutor = executor;
+                }
+            }
+        }
+        return executor;
+    }
+
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    public Duration getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * @param timeout the timeout of every operation, null for no timeout
+     * @return operations on the same executor with another timeout
+     */
+    public AsyncOperations withTimeout(Duration timeout) {
+        return new AsyncOperations(this.executor, timeout);
+    }
+
+    /**
+     * Runs an operation with the timeout of this instance.
+     *
+     * @param operation the blocking operation
+     * @param <T> the result type
+     * @return the future of the result, completed with the exception of the operation if it fails
+     */
+    public <T> CompletableFuture<T> supply(Operation<T> operation) {
+        return supply(operation, this.timeout);
+    }
+
+    /**
+     * Runs an operation with its own timeout.
+     *
+     * @param operation the blocking operation
+     * @param timeout the timeout, null for no timeout
+     * @param <T> the result type
+     * @return the future of the result, completed with a {@link TimeoutException} if the operation does not finish in
+     *         time, or with the exception of the operation if it fails
+     */
+    public <T> CompletableFuture<T> supply(Operation<T> operation, Duration timeout) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        try {
+            executor.execute(() -> {
+                if (result.isDone()) {
+                    // cancelled or timed out while waiting for a thread
+                    return;
+                }
+                try {
+                    result.complete(operation.run());
+                } catch (Throwable e) {
+                    result.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            result.completeExceptionally(e);
+            return result;
+        }
+        if (timeout != null) {
+            ScheduledFuture<?> timer = Timer.INSTANCE.schedule(
+                    () -> result.completeExceptionally(new TimeoutException("Operation timed out after " + timeout)),
+                    timeout.toNanos(), TimeUnit.NANOSECONDS);
+            result.whenComplete((value, e) -> timer.cancel(false));
+        }
+        return result;
+    }
+
+    private static Executor createDefaultExecutor() {
+        try {
+            Method virtualThreads = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            Executor executor = (ExecutorService) virtualThreads.invoke(null);
+            log.debug("Asynchronous operations run on virtual threads");
+            return executor;
+        } catch (ReflectiveOperationException e) {
+            // before Java 21
+        }
+        int threads = Runtime.getRuntime().availableProcessors();
+        AtomicInteger counter = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+                    Thread thread = new Thread(runnable, "pdf-async-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        executor.allowCoreThreadTimeOut(true);
+        log.debug("Asynchronous operations run on a pool of {} threads", threads);
+        return executor;
+    }
+
+    public String toString() {
+        return "AsyncOperations(executor=" + this.executor + ", timeout=" + this.timeout + ")";
+    }
+
+    /**
+     * A blocking operation that may throw checked exceptions.
+     *
+     * @param <T> the result type
+     */
+    @FunctionalInterface
+    public interface Operation<T> {
+        T run() throws Exception;
+    }
+
+    private static class Timer {
+        private static final ScheduledThreadPoolExecutor INSTANCE = create();
+
+        private static ScheduledThreadPoolExecutor create() {
+            ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, runnable -> {
+                Thread thread = new Thread(runnable, "pdf-async-timeout");
+                thread.setDaemon(true);
+                return thread;
+            });
+            timer.setRemoveOnCancelPolicy(true);
+            return timer;
+        }
+    }
+}
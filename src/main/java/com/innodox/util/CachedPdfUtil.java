@@ -0,0 +1,83 @@
+package com.innodox.util;
+
+import com.innodox.model.folding.FoldingLineSet;
+
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * The idempotent operations of {@link PdfUtil} behind a {@link PdfResultCache}. Repeating an operation on the same
+ * document bytes with the same parameters returns the cached result instead of processing the document again.
+ * <pre>
+ *   CachedPdfUtil pdfUtil = new CachedPdfUtil(PdfResultCache.builder().maxBytes(256L * 1024 * 1024).build());
+ *   byte[] page = pdfUtil.getPage(document, 2);
+ * </pre>
+ */
+public class CachedPdfUtil {
+
+    private final PdfResultCache cache;
+
+    public CachedPdfUtil(PdfResultCache cache) {
+        if (cache == null) throw new IllegalArgumentException("Cache is required");
+        this.cache = cache;
+    }
+
+    public PdfResultCache getCache() {
+        return cache;
+    }
+
+    /**
+     * @see PdfUtil#getPage(byte[], int)
+     */
+    public byte[] getPage(byte[] document, int pageNumber) {
+        return cache.get(PdfResultCache.key("getPage", OutputProfile.getDefault(), document, pageNumber), () -> PdfUtil.getPage(document, pageNumber));
+    }
+
+    /**
+     * @see PdfUtil#getPage(Path, int)
+     */
+    public byte[] getPage(Path document, int pageNumber) {
+        return cache.get(PdfResultCache.key("getPage", OutputProfile.getDefault(), PdfSource.of(document), pageNumber), () -> PdfUtil.getPage(document, pageNumber));
+    }
+
+    /**
+     * @see PdfUtil#getPages(byte[], List)
+     */
+    public List<byte[]> getPages(byte[] document, List<String> pageRanges) {
+        return cache.getAll(PdfResultCache.key("getPages", OutputProfile.getDefault(), document, pageRanges), () -> PdfUtil.getPages(document, pageRanges));
+    }
+
+    /**
+     * @see PdfUtil#split(byte[], int)
+     */
+    public List<byte[]> split(byte[] document, int chunkSize) {
+        return cache.getAll(PdfResultCache.key("split", OutputProfile.getDefault(), document, chunkSize), () -> PdfUtil.split(document, chunkSize));
+    }
+
+    /**
+     * @see PdfUtil#split(Path, int)
+     */
+    public List<byte[]> split(Path document, int chunkSize) {
+        return cache.getAll(PdfResultCache.key("split", OutputProfile.getDefault(), PdfSource.of(document), chunkSize), () -> PdfUtil.split(document, chunkSize));
+    }
+
+    /**
+     * @see PdfUtil#addFoldingLines(byte[], FoldingLineSet)
+     */
+    public byte[] addFoldingLines(byte[] document, FoldingLineSet foldingLines) {
+        return cache.get(PdfResultCache.key("addFoldingLines", OutputProfile.getDefault(), document, foldingLines),
+                () -> PdfUtil.addFoldingLines(document, foldingLines));
+    }
+
+    /**
+     * @see PdfUtil#addFoldingLines(Path, FoldingLineSet)
+     */
+    public byte[] addFoldingLines(Path document, FoldingLineSet foldingLines) {
+        return cache.get(PdfResultCache.key("addFoldingLines", OutputProfile.getDefault(), PdfSource.of(document), foldingLines),
+                () -> PdfUtil.addFoldingLines(document, foldingLines));
+    }
+
+    public String toString() {
+        return "CachedPdfUtil(cache=" + this.cache + ")";
+    }
+}
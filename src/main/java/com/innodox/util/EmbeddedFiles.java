@@ -0,0 +1,275 @@
+package com.innodox.util;
+
+import com.innodox.model.PdfAttachmentInfo;
+import com.itextpdf.text.pdf.PRIndirectReference;
+import com.itextpdf.text.pdf.PRStream;
+import com.itextpdf.text.pdf.PdfArray;
+import com.itextpdf.text.pdf.PdfDate;
+import com.itextpdf.text.pdf.PdfDictionary;
+import com.itextpdf.text.pdf.PdfEncodings;
+import com.itextpdf.text.pdf.PdfName;
+import com.itextpdf.text.pdf.PdfNumber;
+import com.itextpdf.text.pdf.PdfObject;
+import com.itextpdf.text.pdf.PdfReader;
+import com.itextpdf.text.pdf.PdfString;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads the embedded files name tree of a document. Only the dictionaries are parsed, embedded streams are read when
+ * the content of an attachment is requested.
+ */
+class EmbeddedFiles {
+
+    /**
+     * Name trees nested deeper than this are treated as malformed, this also stops reference cycles.
+     */
+    private static final int MAX_DEPTH = 32;
+
+    private EmbeddedFiles() {
+    }
+
+    /**
+     * @param reader the reader of the document
+     * @return the root of the embedded files name tree, null if the document has no embedded files
+     */
+    static PdfDictionary root(PdfReader reader) {
+        PdfDictionary names = reader.getCatalog().getAsDict(PdfName.NAMES);
+        return names == null ? null : names.getAsDict(PdfName.EMBEDDEDFILES);
+    }
+
+    /**
+     * Visits every entry of a name tree in key order, descending into /Kids.
+     *
+     * @param node the root of the tree
+     * @param visitor the visitor of the entries
+     * @throws IOException if the tree is malformed or the visitor fails
+     */
+    static void forEach(PdfDictionary node, Visitor visitor) throws IOException {
+        forEach(node, visitor, 0);
+    }
+
+    private static void forEach(PdfDictionary node, Visitor visitor, int depth) throws IOException {
+        if (depth > MAX_DEPTH) {
+            throw new IOException("Embedded files name tree is nested too deep");
+        }
+        PdfArray names = node.getAsArray(PdfName.NAMES);
+        if (names != null) {
+            for (int i = 0; i + 1 < names.size(); i += 2) {
+                PdfString name = names.getAsString(i);
+                PdfDictionary fileSpec = names.getAsDict(i + 1);
+                if (name != null && fileSpec != null) {
+                    visitor.visit(name.toUnicodeString(), fileSpec);
+                }
+            }
+        }
+        PdfArray kids = node.getAsArray(PdfName.KIDS);
+        if (kids != null) {
+            for (int i = 0; i < kids.size(); i++) {
+                PdfDictionary kid = kids.getAsDict(i);
+                if (kid != null) {
+                    forEach(kid, visitor, depth + 1);
+                }
+            }
+        }
+    }
+
+    /**
+     * Looks up an entry of a name tree. Kids are chosen by a binary search on their /Limits and entries of a leaf by a
+     * binary search on their keys, so only the nodes on the path to the entry are read. Kids without /Limits are
+     * searched one by one, a leaf whose keys are not sorted is scanned.
+     *
+     * @param node the root of the tree
+     * @param name the name of the entry
+     * @return the file specification of the entry, null if the tree does not contain it
+     * @throws IOException if the tree is malformed
+     */
+    static PdfDictionary find(PdfDictionary node, String name) throws IOException {
+        return find(node, new Key(name), 0);
+    }
+
+    private static PdfDictionary find(PdfDictionary node, Key key, int depth) throws IOException {
+        if (depth > MAX_DEPTH) {
+            throw new IOException("Embedded files name tree is nested too deep");
+        }
+        PdfArray names = node.getAsArray(PdfName.NAMES);
+        if (names != null) {
+            PdfDictionary fileSpec = findInLeaf(names, key);
+            if (fileSpec != null) {
+                return fileSpec;
+            }
+        }
+        PdfArray kids = node.getAsArray(PdfName.KIDS);
+        if (kids == null) {
+            return null;
+        }
+        int low = 0;
+        int high = kids.size() - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            PdfDictionary kid = kids.getAsDict(middle);
+            PdfArray limits = kid == null ? null : kid.getAsArray(PdfName.LIMITS);
+            PdfString first = limits == null ? null : limits.getAsString(0);
+            PdfString last = limits == null ? null : limits.getAsString(1);
+            if (first == null || last == null) {
+                return findInKids(kids, key, depth);
+            }
+            if (key.compareTo(first) < 0) {
+                high = middle - 1;
+            } else if (key.compareTo(last) > 0) {
+                low = middle + 1;
+            } else {
+                return find(kid, key, depth + 1);
+            }
+        }
+        return null;
+    }
+
+    private static PdfDictionary findInKids(PdfArray kids, Key key, int depth) throws IOException {
+        for (int i = 0; i < kids.size(); i++) {
+            PdfDictionary kid = kids.getAsDict(i);
+            PdfDictionary fileSpec = kid == null ? null : find(kid, key, depth + 1);
+            if (fileSpec != null) {
+                return fileSpec;
+            }
+        }
+        return null;
+    }
+
+    private static PdfDictionary findInLeaf(PdfArray names, Key key) {
+        int low = 0;
+        int high = names.size() / 2 - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            PdfString name = names.getAsString(middle * 2);
+            if (name == null) {
+                break;
+            }
+            int comparison = key.compareTo(name);
+            if (comparison == 0) {
+                return names.getAsDict(middle * 2 + 1);
+            }
+            if (comparison < 0) {
+                high = middle - 1;
+            } else {
+                low = middle + 1;
+            }
+        }
+        // the keys of a leaf are read anyway, a scan also finds entries of unsorted leaves
+        for (int i = 0; i + 1 < names.size(); i += 2) {
+            PdfString name = names.getAsString(i);
+            if (name != null && key.name.equals(name.toUnicodeString())) {
+                return names.getAsDict(i + 1);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Describes an embedded file by its dictionaries. The content is read through a new partial reader of the source
+     * when it is requested.
+     *
+     * @param source the document
+     * @param name the name of the entry
+     * @param fileSpec the file specification of the entry
+     * @return the description, null if the file specification does not embed a file
+     */
+    static PdfAttachmentInfo describe(PdfSource source, String name, PdfDictionary fileSpec) {
+        PdfDictionary streams = fileSpec.getAsDict(PdfName.EF);
+        PdfObject reference = streams == null ? null : streams.get(PdfName.UF);
+        if (reference == null && streams != null) {
+            reference = streams.get(PdfName.F);
+        }
+        if (!(reference instanceof PRIndirectReference)) {
+            return null;
+        }
+        PdfObject object = PdfReader.getPdfObject(reference);
+        if (!(object instanceof PRStream)) {
+            return null;
+        }
+        PRStream stream = (PRStream) object;
+        int number = ((PRIndirectReference) reference).getNumber();
+
+        PdfString description = fileSpec.getAsString(PdfName.DESC);
+        PdfName subtype = stream.getAsName(PdfName.SUBTYPE);
+        PdfDictionary params = stream.getAsDict(PdfName.PARAMS);
+        PdfNumber size = params == null ? null : params.getAsNumber(PdfName.SIZE);
+        PdfString checksum = params == null ? null : params.getAsString(PdfName.CHECKSUM);
+        PdfString modificationDate = params == null ? null : params.getAsString(PdfName.MODDATE);
+
+        return new PdfAttachmentInfo(
+            name,
+            description == null ? null : description.toUnicodeString(),
+            subtype == null ? null : PdfName.decodeName(subtype.toString()),
+            size == null ? -1 : size.longValue(),
+            stream.getLength(),
+            checksum == null ? null : hex(checksum.getBytes()),
+            modificationDate == null ? null : PdfDate.decode(modificationDate.toString()),
+            () -> load(source, number)
+        );
+    }
+
+    private static byte[] load(PdfSource source, int number) throws IOException {
+        PdfReader reader = source.openPartialReader();
+        try {
+            PdfObject object = reader.getPdfObject(number);
+            if (!(object instanceof PRStream)) {
+                throw new IOException("Embedded file " + number + " is not a stream");
+            }
+            return PdfReader.getStreamBytes((PRStream) object);
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * The name looked up, encoded like the keys of the tree it is compared with. Name tree keys are ordered by their
+     * bytes, which are either PDFDocEncoding or UTF-16BE with a byte order mark.
+     */
+    private static class Key {
+        private final String name;
+        private final byte[] pdfDocEncoded;
+        private final byte[] utf16Encoded;
+
+        private Key(String name) {
+            this.name = name;
+            this.pdfDocEncoded = PdfEncodings.convertToBytes(name, PdfObject.TEXT_PDFDOCENCODING);
+            byte[] utf16 = name.getBytes(StandardCharsets.UTF_16BE);
+            this.utf16Encoded = new byte[utf16.length + 2];
+            this.utf16Encoded[0] = (byte) 0xFE;
+            this.utf16Encoded[1] = (byte) 0xFF;
+            System.arraycopy(utf16, 0, this.utf16Encoded, 2, utf16.length);
+        }
+
+        private int compareTo(PdfString key) {
+            byte[] other = key.getBytes();
+            boolean utf16 = other.length >= 2 && (other[0] & 0xFF) == 0xFE && (other[1] & 0xFF) == 0xFF;
+            byte[] own = utf16 ? utf16Encoded : pdfDocEncoded;
+            int length = Math.min(own.length, other.length);
+            for (int i = 0; i < length; i++) {
+                int difference = (own[i] & 0xFF) - (other[i] & 0xFF);
+                if (difference != 0) {
+                    return difference;
+                }
+            }
+            return own.length - other.length;
+        }
+    }
+
+    /**
+     * Receives the entries of a name tree.
+     */
+    @FunctionalInterface
+    interface Visitor {
+        void visit(String name, PdfDictionary fileSpec) throws IOException;
+    }
+}
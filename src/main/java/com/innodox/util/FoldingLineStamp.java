@@ -0,0 +1,51 @@
+package com.innodox.util;
+
+import com.innodox.model.folding.FoldingLineSet;
+import com.itextpdf.text.BaseColor;
+import com.itextpdf.text.Rectangle;
+import com.itextpdf.text.pdf.PdfContentByte;
+import com.itextpdf.text.pdf.PdfTemplate;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Stamps a {@link FoldingLineSet} on the pages of a single document. The lines are drawn once per distinct page
+ * rectangle into a form XObject and every page only references it.
+ * <p>
+ * A stamp belongs to the writer of one document and must not be shared between documents or threads.
+ */
+class FoldingLineStamp implements PageOverlay {
+
+    private final FoldingLineSet foldingLines;
+    private final BaseColor color;
+    private final Map<String, PdfTemplate> templates = new HashMap<>();
+
+    FoldingLineStamp(FoldingLineSet foldingLines, BaseColor color) {
+        this.foldingLines = foldingLines;
+        this.color = color;
+    }
+
+    @Override
+    public void apply(PdfContentByte over, Rectangle pageSize) {
+        String key = pageSize.getLeft() + "," + pageSize.getBottom() + "," + pageSize.getWidth() + "x" + pageSize.getHeight();
+        PdfTemplate template = templates.computeIfAbsent(key, size -> createTemplate(over, pageSize));
+        over.addTemplate(template, 0, 0);
+    }
+
+    private PdfTemplate createTemplate(PdfContentByte over, Rectangle pageSize) {
+        float[] coordinates = foldingLines.resolve(pageSize.getLeft(), pageSize.getBottom(), pageSize.getWidth(), pageSize.getHeight());
+        PdfTemplate template = over.createTemplate(pageSize.getWidth(), pageSize.getHeight());
+        // absolute lines are drawn in the coordinate space of the page, which does not have to start at the origin
+        template.setBoundingBox(new Rectangle(pageSize.getLeft(), pageSize.getBottom(), pageSize.getRight(), pageSize.getTop()));
+        template.saveState();
+        template.setColorStroke(color);
+        for (int i = 0; i < coordinates.length; i += 4) {
+            template.moveTo(coordinates[i], coordinates[i + 1]);
+            template.lineTo(coordinates[i + 2], coordinates[i + 3]);
+        }
+        template.stroke();
+        template.restoreState();
+        return template;
+    }
+}
@@ -0,0 +1,33 @@
+package com.innodox.util;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Helpers for the concurrent operation modes of the library.
+ */
+public class Futures {
+
+    private Futures() {
+
+    }
+
+    /**
+     * Waits for a future and rethrows the original runtime exception of a failed task, so concurrent operations fail
+     * with the same exceptions as their sequential counterparts.
+     *
+     * @param future the future to wait for
+     * @param <T> the result type
+     * @return the result of the future
+     */
+    public static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+}
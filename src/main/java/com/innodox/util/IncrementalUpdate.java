@@ -0,0 +1,153 @@
+package com.innodox.util;
+
+import com.innodox.document.init.PdfStamperProcessor;
+import com.innodox.exception.InvalidFileContentException;
+import com.innodox.metrics.Measurement;
+import com.innodox.metrics.PdfPhase;
+import com.itextpdf.text.DocumentException;
+import com.itextpdf.text.pdf.PdfReader;
+import com.itextpdf.text.pdf.PdfStamper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Path;
+
+/**
+ * Applies stamper processors as an incremental update. The original bytes of the document are kept as they are and
+ * only the new and changed objects are appended after them, with a cross-reference section pointing back to the
+ * original one. Digital signatures over the original bytes stay valid, whether a viewer accepts the changes depends on
+ * the permissions of the signature.
+ * <pre>
+ *   byte[] marked = IncrementalUpdate.apply(document, PdfTransform.watermarkProcessor(watermark));
+ * </pre>
+ * Object streams are not written in append mode, the full compression of an {@link OutputProfile} is ignored.
+ */
+public class IncrementalUpdate {
+
+    private IncrementalUpdate() {
+
+    }
+
+    /**
+     * @param document the document
+     * @param processors the processors, applied in order through one stamper
+     * @return the original document followed by the appended update
+     * @throws InvalidFileContentException if the document can not be read or was repaired while reading
+     */
+    public static byte[] apply(byte[] document, PdfStamperProcessor... processors) {
+        return apply(PdfSource.of(document), processors);
+    }
+
+    /**
+     * @param document the document, memory-mapped instead of being loaded onto the heap
+     * @param processors the processors, applied in order through one stamper
+     * @return the original document followed by the appended update
+     * @throws InvalidFileContentException if the document can not be read or was repaired while reading
+     */
+    public static byte[] apply(Path document, PdfStamperProcessor... processors) {
+        return apply(PdfSource.of(document), processors);
+    }
+
+    /**
+     * @param document the document
+     * @param processors the processors, applied in order through one stamper
+     * @return the original document followed by the appended update
+     * @throws InvalidFileContentException if the document can not be read or was repaired while reading
+     */
+    public static byte[] apply(PdfSource document, PdfStamperProcessor... processors) {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        update(document, outputStream, false, processors);
+        return outputStream.toByteArray();
+    }
+
+    /**
+     * Writes only the appended update, for a sink that already holds the original bytes, like a file opened for
+     * appending or an object store supporting appends. The original document followed by the tail is the updated
+     * document.
+     *
+     * @param document the document
+     * @param tail the sink of the appended bytes, it is not closed
+     * @param processors the processors, applied in order through one stamper
+     * @return the number of bytes written to the sink
+     * @throws InvalidFileContentException if the document can not be read or was repaired while reading
+     */
+    public static long appendTail(PdfSource document, OutputStream tail, PdfStamperProcessor... processors) {
+        return update(document, tail, true, processors);
+    }
+
+    /**
+     * Opens a stamper that either rewrites the document or appends an incremental update to it.
+     *
+     * @param reader the reader of the document
+     * @param outputStream the sink of the stamped document
+     * @param append whether the changes are appended as an incremental update
+     * @return the stamper
+     * @throws DocumentException if the document was repaired while reading and can not be appended to
+     * @throws IOException if the document can not be read
+     */
+    public static PdfStamper openStamper(PdfReader reader, OutputStream outputStream, boolean append)
+            throws DocumentException, IOException {
+        return append ? new PdfStamper(reader, outputStream, '\0', true) : new PdfStamper(reader, outputStream);
+    }
+
+    private static long update(PdfSource document, OutputStream outputStream, boolean tailOnly, PdfStamperProcessor... processors) {
+        try (Measurement measurement = Measurement.start("incrementalUpdate")) {
+            PdfReader reader = document.openReader();
+            try {
+                int numberOfPages = reader.getNumberOfPages();
+                long originalLength = reader.getFileLength();
+                measurement.phase(PdfPhase.READ, numberOfPages, originalLength);
+                TailOutputStream target = new TailOutputStream(outputStream, tailOnly ? originalLength : 0);
+                PdfStamper stamper = openStamper(reader, target, true);
+                stamper.getWriter().setCloseStream(false);
+                OutputProfile.getDefault().apply(stamper);
+                for (PdfStamperProcessor processor : processors) {
+                    processor.process(stamper);
+                }
+                measurement.phase(PdfPhase.STAMP, numberOfPages, 0);
+                stamper.close();
+                long appended = target.written - originalLength;
+                measurement.phase(PdfPhase.WRITE, numberOfPages, appended);
+                measurement.stop(numberOfPages, appended);
+                return tailOnly ? appended : target.written;
+            } finally {
+                reader.close();
+            }
+        } catch (IOException | DocumentException e) {
+            throw new InvalidFileContentException(e);
+        }
+    }
+
+    /**
+     * Drops the first bytes written to it, the copy of the original document made by the stamper in append mode.
+     */
+    private static class TailOutputStream extends FilterOutputStream {
+        private final long skip;
+        private long written;
+
+        private TailOutputStream(OutputStream out, long skip) {
+            super(out);
+            this.skip = skip;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (written++ >= skip) {
+                out.write(b);
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            long start = written;
+            written += len;
+            if (written <= skip) {
+                return;
+            }
+            int dropped = (int) Math.max(0, skip - start);
+            out.write(b, off + dropped, len - dropped);
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package com.innodox.util;
+
+import com.itextpdf.text.Document;
+import com.itextpdf.text.DocumentException;
+import com.itextpdf.text.pdf.PdfCopy;
+import com.itextpdf.text.pdf.PdfSmartCopy;
+import com.itextpdf.text.pdf.PdfStamper;
+import com.itextpdf.text.pdf.PdfWriter;
+
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+
+/**
+ * Trades processing time for output size when documents are written.
+ * <p>
+ * The compression levels apply to the streams written by an operation, one to stamped page contents and the other to
+ * embedded files, streams copied from the input are written as they are. Full compression writes the objects of the
+ * document into compressed object streams with a cross-reference stream, which requires PDF 1.5 readers.
+ * Deduplication stores identical fonts, images and other streams of merged documents once.
+ * <p>
+ * Operations without their own setting use {@link #getDefault()}, {@link #STANDARD} unless changed.
+ */
+public enum OutputProfile {
+
+    /**
+     * The output of the library before profiles were introduced: default compression of page contents, best
+     * compression of embedded files, classic cross-reference table, no deduplication.
+     */
+    STANDARD(Deflater.DEFAULT_COMPRESSION, Deflater.BEST_COMPRESSION, false, false),
+
+    /**
+     * Fastest compression, classic cross-reference table, no deduplication.
+     */
+    FAST(Deflater.BEST_SPEED, Deflater.BEST_SPEED, false, false),
+
+    /**
+     * Default compression with object streams, no deduplication.
+     */
+    BALANCED(Deflater.DEFAULT_COMPRESSION, Deflater.DEFAULT_COMPRESSION, true, false),
+
+    /**
+     * Best compression with object streams, merged documents are deduplicated.
+     */
+    SMALLEST(Deflater.BEST_COMPRESSION, Deflater.BEST_COMPRESSION, true, true);
+
+    private static volatile OutputProfile defaultProfile = STANDARD;
+
+    private final int compressionLevel;
+    private final int embeddedFileCompressionLevel;
+    private final boolean fullCompression;
+    private final boolean deduplication;
+
+    OutputProfile(int compressionLevel, int embeddedFileCompressionLevel, boolean fullCompression, boolean deduplication) {
+        this.compressionLevel = compressionLevel;
+        this.embeddedFileCompressionLevel = embeddedFileCompressionLevel;
+        this.fullCompression = fullCompression;
+        this.deduplication = deduplication;
+    }
+
+    /**
+     * @return the profile of the operations without their own setting, {@link #STANDARD} unless changed
+     */
+    public static OutputProfile getDefault() {
+        return defaultProfile;
+    }
+
+    /**
+     * Changes the profile of the operations without their own setting, for example once at application start.
+     *
+     * @param profile the new default profile
+     */
+    public static void setDefault(OutputProfile profile) {
+        if (profile == null) throw new IllegalArgumentException("Output profile is required");
+        defaultProfile = profile;
+    }
+
+    /**
+     * @param profile a profile or null
+     * @return the profile, or the default profile if it is null
+     */
+    public static OutputProfile orDefault(OutputProfile profile) {
+        return profile != null ? profile : defaultProfile;
+    }
+
+    /**
+     * @return the deflate level of the written streams, between 0 and 9 or -1 for the zlib default
+     */
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    /**
+     * @return the deflate level of embedded files, between 0 and 9 or -1 for the zlib default
+     */
+    public int getEmbeddedFileCompressionLevel() {
+        return embeddedFileCompressionLevel;
+    }
+
+    public boolean isFullCompression() {
+        return fullCompression;
+    }
+
+    public boolean isDeduplication() {
+        return deduplication;
+    }
+
+    /**
+     * Configures a stamper, before it is closed.
+     *
+     * @param stamper the stamper
+     * @throws DocumentException if the stamper can not be configured
+     */
+    public void apply(PdfStamper stamper) throws DocumentException {
+        stamper.getWriter().setCompressionLevel(compressionLevel);
+        if (fullCompression) {
+            stamper.setFullCompression();
+        }
+    }
+
+    /**
+     * Configures a writer, before its document is opened.
+     *
+     * @param writer the writer
+     * @throws DocumentException if the document is already open
+     */
+    public void apply(PdfWriter writer) throws DocumentException {
+        writer.setCompressionLevel(compressionLevel);
+        if (fullCompression) {
+            writer.setFullCompression();
+        }
+    }
+
+    /**
+     * Creates the copy of a merge, a {@link PdfSmartCopy} if the profile deduplicates.
+     *
+     * @param document the document of the copy, not yet opened
+     * @param outputStream the sink of the copy
+     * @return the configured copy
+     * @throws DocumentException if the copy can not be created
+     */
+    public PdfCopy newCopy(Document document, OutputStream outputStream) throws DocumentException {
+        PdfCopy copy = deduplication ? new PdfSmartCopy(document, outputStream) : new PdfCopy(document, outputStream);
+        apply(copy);
+        return copy;
+    }
+}
@@ -0,0 +1,19 @@
+package com.innodox.util;
+
+import com.itextpdf.text.Rectangle;
+import com.itextpdf.text.pdf.PdfContentByte;
+
+/**
+ * Content drawn over the pages of a document, such as a watermark or folding lines.
+ */
+@FunctionalInterface
+public interface PageOverlay {
+
+    /**
+     * Draws the overlay on a single page.
+     *
+     * @param over the content drawn over the page
+     * @param pageSize the size of the page, with its rotation applied if the content is drawn rotated
+     */
+    void apply(PdfContentByte over, Rectangle pageSize);
+}
@@ -0,0 +1,293 @@
+package com.innodox.util;
+
+import com.innodox.exception.InvalidFileContentException;
+import com.itextpdf.text.Document;
+import com.itextpdf.text.DocumentException;
+import com.itextpdf.text.Rectangle;
+import com.itextpdf.text.pdf.PdfCopy;
+import com.itextpdf.text.pdf.PdfDictionary;
+import com.itextpdf.text.pdf.PdfImportedPage;
+import com.itextpdf.text.pdf.PdfName;
+import com.itextpdf.text.pdf.PdfObject;
+import com.itextpdf.text.pdf.PdfReader;
+import com.itextpdf.text.pdf.PdfSmartCopy;
+import com.itextpdf.text.pdf.PdfString;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+
+/**
+ * Opt-in mode that stamps the pages of a very large document concurrently.
+ * <p>
+ * The document is divided into ranges of consecutive pages. Every range is stamped by its own task, through its own
+ * partial reader over the shared read-only {@link PdfSource}, and the stamped ranges are stitched back together with
+ * {@link PdfSmartCopy}, which stores the resources shared between ranges, like fonts, only once. Only a bounded number
+ * of ranges is stamped or waiting to be stitched at the same time.
+ * <p>
+ * Stitching copies pages and the document information, other document level structures such as interactive forms,
+ * outlines, embedded files or the structure tree would be lost. Documents that have any of them, and documents with
+ * fewer pages than the threshold, are stamped by the plain sequential path.
+ */
+public class ParallelStamping {
+
+    private static final Logger log = LoggerFactory.getLogger(ParallelStamping.class);
+
+    /**
+     * Catalog entries that stitching recreates, a catalog with any other entry is stamped sequentially.
+     */
+    private static final Set<PdfName> STITCHED_CATALOG_KEYS = new HashSet<>(Arrays.asList(PdfName.TYPE, PdfName.PAGES));
+
+    private final Executor executor;
+    private final int threshold;
+    private final int rangeSize;
+    private final int maxRangesInFlight;
+
+    public ParallelStamping(Executor executor, int threshold, int rangeSize) {
+        this(executor, threshold, rangeSize, Runtime.getRuntime().availableProcessors());
+    }
+
+    public ParallelStamping(Executor executor, int threshold, int rangeSize, int maxRangesInFlight) {
+        if (executor == null) throw new IllegalArgumentException("Executor is required");
+        if (rangeSize < 1) throw new IllegalArgumentException("Range size must be positive: " + rangeSize);
+        if (maxRangesInFlight < 1) throw new IllegalArgumentException("Ranges in flight must be positive: " + maxRangesInFlight);
+        this.executor = executor;
+        this.threshold = threshold;
+        this.rangeSize = rangeSize;
+        this.maxRangesInFlight = maxRangesInFlight;
+    }
+
+    public static ParallelStampingBuilder builder() {
+        return new ParallelStampingBuilder();
+    }
+
+    public Executor getExecutor() {
+        return this.executor;
+    }
+
+    public int getThreshold() {
+        return this.threshold;
+    }
+
+    public int getRangeSize() {
+        return this.rangeSize;
+    }
+
+    public int getMaxRangesInFlight() {
+        return this.maxRangesInFlight;
+    }
+
+    /**
+     * @param numberOfPages the number of pages of a document
+     * @return true if the document is large enough to be stamped in parallel
+     */
+    public boolean appliesTo(int numberOfPages) {
+        return numberOfPages >= this.threshold && numberOfPages > this.rangeSize;
+    }
+
+    /**
+     * Reads the page count and the catalog of a document through a partial reader, to decide whether it is stamped
+     * in parallel.
+     *
+     * @param document the document
+     * @return the number of pages of the document if it is stamped in parallel, -1 if it is below the threshold, has
+     * document level structures that stitching would lose, or can not be read partially
+     */
+    public int applicablePageCount(PdfSource document) {
+        PdfReader reader = null;
+        try {
+            reader = document.openPartialReader();
+            int numberOfPages = reader.getNumberOfPages();
+            if (!appliesTo(numberOfPages)) {
+                return -1;
+            }
+            for (PdfName key : reader.getCatalog().getKeys()) {
+                if (!STITCHED_CATALOG_KEYS.contains(key)) {
+                    log.debug("Catalog entry {} would be lost by stitching, stamping sequentially", key);
+                    return -1;
+                }
+            }
+            return numberOfPages;
+        } catch (IOException | RuntimeException e) {
+            log.debug("Could not probe the document, stamping sequentially", e);
+            return -1;
+        } finally {
+            if (reader != null) {
+                reader.close();
+            }
+        }
+    }
+
+    /**
+     * Stamps every page of a document concurrently, one task per page range.
+     *
+     * @param document the document to stamp
+     * @param numberOfPages the number of pages of the document
+     * @param overlays creates the overlay of a range, every range gets its own instance
+     * @param rotateContents whether the overlay is drawn in the coordinate space of rotated pages, as with
+     *                       {@link com.itextpdf.text.pdf.PdfStamper#setRotateContents(boolean)}
+     * @return the stamped document
+     * @throws InvalidFileContentException if the document can not be stamped
+     */
+    public byte[] stamp(PdfSource document, int numberOfPages, Supplier<? extends PageOverlay> overlays, boolean rotateContents) {
+        return stamp(document, numberOfPages, overlays, rotateContents, OutputProfile.getDefault());
+    }
+
+    /**
+     * Stamps every page of a document concurrently, writing the stitched document with the given profile. The ranges
+     * are always stitched with deduplication, since they share the resources of the document.
+     *
+     * @param document the document to stamp
+     * @param numberOfPages the number of pages of the document
+     * @param overlays creates the overlay of a range, every range gets its own instance
+     * @param rotateContents whether the overlay is drawn in the coordinate space of rotated pages
+     * @param profile the profile of the stitched document
+     * @return the stamped document
+     * @throws InvalidFileContentException if the document can not be stamped
+     */
+    public byte[] stamp(PdfSource document, int numberOfPages, Supplier<? extends PageOverlay> overlays, boolean rotateContents,
+                        OutputProfile profile) {
+        log.debug("Stamping {} pages in ranges of {} pages", numberOfPages, this.rangeSize);
+        Deque<CompletableFuture<byte[]>> ranges = new ArrayDeque<>();
+        int next = 1;
+
+        Document output = new Document();
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        try {
+            PdfCopy copy = new PdfSmartCopy(output, outputStream);
+            profile.apply(copy);
+            copyInfo(document, copy);
+            output.open();
+            while (next <= numberOfPages || !ranges.isEmpty()) {
+                // ranges are submitted while earlier ones are stitched, the window bounds the stamped ranges held
+                while (ranges.size() < this.maxRangesInFlight && next <= numberOfPages) {
+                    int from = next;
+                    int to = Math.min(numberOfPages, from + this.rangeSize - 1);
+                    ranges.add(CompletableFuture.supplyAsync(
+                            () -> stampRange(document, from, to, overlays.get(), rotateContents), this.executor));
+                    next = to + 1;
+                }
+                PdfReader reader = new PdfReader(Futures.join(ranges.poll()));
+                for (int i = 1; i <= reader.getNumberOfPages(); i++) {
+                    copy.addPage(copy.getImportedPage(reader, i));
+                }
+                copy.freeReader(reader);
+                reader.close();
+            }
+            output.close();
+        } catch (IOException | DocumentException e) {
+            throw new InvalidFileContentException(e);
+        } finally {
+            ranges.forEach(range -> range.cancel(false));
+        }
+        return outputStream.toByteArray();
+    }
+
+    private static void copyInfo(PdfSource document, PdfCopy copy) throws IOException {
+        PdfReader reader = document.openPartialReader();
+        try {
+            PdfDictionary info = copy.getInfo();
+            for (Map.Entry<String, String> entry : reader.getInfo().entrySet()) {
+                info.put(new PdfName(entry.getKey()), new PdfString(entry.getValue(), PdfObject.TEXT_UNICODE));
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static byte[] stampRange(PdfSource document, int from, int to, PageOverlay overlay, boolean rotateContents) {
+        log.debug("Stamping pages {}-{}", from, to);
+        PdfReader reader = null;
+        try {
+            reader = document.openPartialReader();
+            Document output = new Document();
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            PdfCopy copy = new PdfCopy(output, outputStream);
+            copy.setRotateContents(rotateContents);
+            output.open();
+            for (int i = from; i <= to; i++) {
+                // a partial reader releases the page dictionary when the size is read, the page stamp has to alter
+                // the dictionary that is copied afterwards
+                Rectangle pageSize = rotateContents ? reader.getPageSizeWithRotation(i) : reader.getPageSize(i);
+                PdfImportedPage page = copy.getImportedPage(reader, i);
+                PdfCopy.PageStamp stamp = copy.createPageStamp(page);
+                overlay.apply(stamp.getOverContent(), pageSize);
+                stamp.alterContents();
+                copy.addPage(page);
+            }
+            copy.freeReader(reader);
+            output.close();
+            return outputStream.toByteArray();
+        } catch (IOException | DocumentException e) {
+            throw new InvalidFileContentException(e);
+        } finally {
+            if (reader != null) {
+                reader.close();
+            }
+        }
+    }
+
+    public String toString() {
+        return "ParallelStamping(executor=" + this.executor + ", threshold=" + this.threshold + ", rangeSize=" + this.rangeSize
+                + ", maxRangesInFlight=" + this.maxRangesInFlight + ")";
+    }
+
+    public static class ParallelStampingBuilder {
+        private Executor executor;
+        private int threshold = 1000;
+        private int rangeSize = 250;
+        private int maxRangesInFlight = Runtime.getRuntime().availableProcessors();
+
+        ParallelStampingBuilder() {
+        }
+
+        public ParallelStampingBuilder executor(Executor executor) {
+            this.executor = executor;
+            return this;
+        }
+
+        /**
+         * @param threshold the minimum number of pages for parallel stamping, 1000 by default
+         */
+        public ParallelStampingBuilder threshold(int threshold) {
+            this.threshold = threshold;
+            return this;
+        }
+
+        /**
+         * @param rangeSize the number of pages stamped by a single task, 250 by default
+         */
+        public ParallelStampingBuilder rangeSize(int rangeSize) {
+            this.rangeSize = rangeSize;
+            return this;
+        }
+
+        /**
+         * @param maxRangesInFlight the number of ranges stamped or waiting to be stitched at the same time, the number
+         *                          of processors by default
+         */
+        public ParallelStampingBuilder maxRangesInFlight(int maxRangesInFlight) {
+            this.maxRangesInFlight = maxRangesInFlight;
+            return this;
+        }
+
+        public ParallelStamping build() {
+            return new ParallelStamping(this.executor, this.threshold, this.rangeSize, this.maxRangesInFlight);
+        }
+
+        public String toString() {
+            return "ParallelStamping.ParallelStampingBuilder(executor=" + this.executor + ", threshold=" + this.threshold + ", rangeSize=" + this.rangeSize
+                    + ", maxRangesInFlight=" + this.maxRangesInFlight + ")";
+        }
+    }
+}
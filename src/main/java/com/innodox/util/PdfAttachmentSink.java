@@ -0,0 +1,21 @@
+package com.innodox.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Receives the embedded files of a PDF one by one while they are being extracted.
+ * The given stream is only valid during the call, it is closed as soon as the sink returns.
+ */
+@FunctionalInterface
+public interface PdfAttachmentSink {
+
+    /**
+     * Consumes a single attachment.
+     *
+     * @param name the attachment name as stored in the embedded files name tree
+     * @param data the decoded attachment content
+     * @throws IOException if the content can not be consumed
+     */
+    void accept(String name, InputStream data) throws IOException;
+}
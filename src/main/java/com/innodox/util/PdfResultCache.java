@@ -0,0 +1,476 @@
+package com.innodox.util;
+
+import com.itextpdf.text.io.RandomAccessSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Content-addressed cache of the results of idempotent operations. A result is keyed by the SHA-256 digest of the
+ * operation name, its parameters and the bytes of its input documents, see {@link #key(String, Object...)}.
+ * <p>
+ * Results are kept in memory up to a limit on their total size, evicting the least recently used results first, and
+ * optionally in a directory on the local disk up to a separate limit, deleting the least recently used files first.
+ * Files already in the directory when the cache is created count towards that limit, in the order of their
+ * modification time. The limit only covers the files known to this instance, a directory shared by several caches or
+ * processes may grow up to the sum of their limits. A result missing from memory is looked up on the disk before the
+ * operation is run again, results read from the disk are kept in memory again.
+ * <p>
+ * The cache is thread safe. An operation is run outside of any lock, so two threads missing the same key at the same
+ * time both run it once. Every call returns its own copy of a result, so a caller modifying it does not affect the
+ * cached result.
+ */
+public class PdfResultCache {
+
+    private static final Logger log = LoggerFactory.getLogger(PdfResultCache.class);
+
+    private static final int DIGEST_BUFFER_SIZE = 64 * 1024;
+
+    private static final long DEFAULT_MAX_DISK_BYTES = 1024L * 1024 * 1024;
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+
+    private final long maxBytes;
+    private final Path directory;
+    private final long maxDiskBytes;
+    private final Map<String, byte[]> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+    // guarded by diskEntries
+    private final Map<String, Long> diskEntries = new LinkedHashMap<>(16, 0.75f, true);
+    private long diskBytes;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder diskHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder diskEvictions = new LongAdder();
+
+    public PdfResultCache(long maxBytes, Path directory) {
+        this(maxBytes, directory, DEFAULT_MAX_DISK_BYTES);
+    }
+
+    public PdfResultCache(long maxBytes, Path directory, long maxDiskBytes) {
+        if (maxBytes < 0) throw new IllegalArgumentException("Memory limit must not be negative: " + maxBytes);
+        if (maxDiskBytes < 0) throw new IllegalArgumentException("Disk limit must not be negative: " + maxDiskBytes);
+        this.maxBytes = maxBytes;
+        this.directory = directory;
+        this.maxDiskBytes = maxDiskBytes;
+        if (directory != null) {
+            try {
+                Files.createDirectories(directory);
+                indexDirectory();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    public static PdfResultCacheBuilder builder() {
+        return new PdfResultCacheBuilder();
+    }
+
+    /**
+     * Computes the key of an operation. Parameters are digested by content: byte arrays and {@link PdfSource}s by
+     * their bytes, iterables element by element, anything else by its string form.
+     *
+     * @param operation the name of the operation
+     * @param parameters the input documents and the parameters of the operation
+     * @return the hex encoded SHA-256 digest
+     */
+    public static String key(String operation, Object... parameters) {
+        MessageDigest digest = newDigest();
+        update(digest, operation);
+        for (Object parameter : parameters) {
+            update(digest, parameter);
+        }
+        StringBuilder hex = new StringBuilder(64);
+        for (byte b : digest.digest()) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * Returns the cached result of an operation, running the operation if the result is not cached.
+     *
+     * @param key the key of the operation, see {@link #key(String, Object...)}
+     * @param operation runs the operation
+     * @return a copy of the result
+     */
+    public byte[] get(String key, Supplier<byte[]> operation) {
+        byte[] result = lookup(key);
+        if (result != null) {
+            return result.clone();
+        }
+        misses.increment();
+        result = operation.get();
+        store(key, result);
+        return result.clone();
+    }
+
+    /**
+     * Returns the cached results of an operation with several outputs, running the operation if they are not cached.
+     * The outputs are stored together as a single entry.
+     *
+     * @param key the key of the operation, see {@link #key(String, Object...)}
+     * @param operation runs the operation
+     * @return the results, unpacked into new arrays on every call
+     */
+    public List<byte[]> getAll(String key, Supplier<List<byte[]>> operation) {
+        byte[] packed = lookup(key);
+        if (packed != null) {
+            return unpack(packed);
+        }
+        misses.increment();
+        List<byte[]> results = operation.get();
+        store(key, pack(results));
+        return results;
+    }
+
+    /**
+     * @return the number of results served from memory
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return the number of results served from the disk
+     */
+    public long getDiskHits() {
+        return diskHits.sum();
+    }
+
+    /**
+     * @return the number of operations that had to be run
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return the number of results evicted from memory
+     */
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * @return the number of result files deleted from the disk to stay within its limit
+     */
+    public long getDiskEvictions() {
+        return diskEvictions.sum();
+    }
+
+    /**
+     * @return the total size of the result files on the disk known to this cache
+     */
+    public long getDiskBytes() {
+        synchronized (diskEntries) {
+            return diskBytes;
+        }
+    }
+
+    /**
+     * @return the total size of the results in memory
+     */
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Removes every result from memory, results on the disk are kept.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        bytes = 0;
+    }
+
+    private byte[] lookup(String key) {
+        byte[] result;
+        synchronized (this) {
+            result = entries.get(key);
+        }
+        if (result != null) {
+            hits.increment();
+            return result;
+        }
+        result = readFromDisk(key);
+        if (result != null) {
+            diskHits.increment();
+            putInMemory(key, result);
+        }
+        return result;
+    }
+
+    private void store(String key, byte[] result) {
+        putInMemory(key, result);
+        writeToDisk(key, result);
+    }
+
+    private synchronized void putInMemory(String key, byte[] result) {
+        if (result.length > maxBytes) {
+            return;
+        }
+        byte[] previous = entries.put(key, result);
+        bytes += result.length - (previous != null ? previous.length : 0);
+        Iterator<byte[]> eldest = entries.values().iterator();
+        while (bytes > maxBytes) {
+            bytes -= eldest.next().length;
+            eldest.remove();
+            evictions.increment();
+        }
+    }
+
+    /**
+     * Registers the result files already in the directory, oldest first, and deletes the oldest ones beyond the limit.
+     */
+    private void indexDirectory() throws IOException {
+        List<Path> files;
+        try (Stream<Path> listing = Files.list(directory)) {
+            files = new ArrayList<>();
+            listing.filter(file -> !file.getFileName().toString().endsWith(TEMPORARY_SUFFIX))
+                    .filter(Files::isRegularFile)
+                    .forEach(files::add);
+        }
+        List<BasicFileAttributes> attributes = new ArrayList<>(files.size());
+        for (Path file : files) {
+            attributes.add(Files.readAttributes(file, BasicFileAttributes.class));
+        }
+        List<Integer> order = new ArrayList<>(files.size());
+        for (int i = 0; i < files.size(); i++) {
+            order.add(i);
+        }
+        order.sort((a, b) -> attributes.get(a).lastModifiedTime().compareTo(attributes.get(b).lastModifiedTime()));
+        for (int i : order) {
+            deleteFromDisk(addToDiskIndex(files.get(i).getFileName().toString(), attributes.get(i).size()));
+        }
+    }
+
+    private byte[] readFromDisk(String key) {
+        if (directory == null) {
+            return null;
+        }
+        Path file = directory.resolve(key);
+        try {
+            byte[] result = Files.readAllBytes(file);
+            synchronized (diskEntries) {
+                // marks the file as recently used
+                diskEntries.get(key);
+            }
+            return result;
+        } catch (NoSuchFileException e) {
+            removeFromDiskIndex(key);
+            return null;
+        } catch (IOException e) {
+            log.warn("Could not read cached result {}", file, e);
+            return null;
+        }
+    }
+
+    private void writeToDisk(String key, byte[] result) {
+        if (directory == null || result.length > maxDiskBytes) {
+            return;
+        }
+        Path file = directory.resolve(key);
+        try {
+            Path temporary = Files.createTempFile(directory, key, TEMPORARY_SUFFIX);
+            Files.write(temporary, result);
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // the disk tier is best effort, the result is still returned
+            log.warn("Could not write cached result {}", file, e);
+            return;
+        }
+        deleteFromDisk(addToDiskIndex(key, result.length));
+    }
+
+    /**
+     * Adds a result file to the index of the disk tier and removes the least recently used files beyond the limit
+     * from it.
+     *
+     * @return the keys of the removed files, to be deleted
+     */
+    private List<String> addToDiskIndex(String key, long size) {
+        List<String> evicted = new ArrayList<>();
+        synchronized (diskEntries) {
+            Long previous = diskEntries.put(key, size);
+            diskBytes += size - (previous != null ? previous : 0);
+            Iterator<Map.Entry<String, Long>> eldest = diskEntries.entrySet().iterator();
+            while (diskBytes > maxDiskBytes) {
+                Map.Entry<String, Long> entry = eldest.next();
+                diskBytes -= entry.getValue();
+                evicted.add(entry.getKey());
+                eldest.remove();
+            }
+        }
+        return evicted;
+    }
+
+    private void removeFromDiskIndex(String key) {
+        synchronized (diskEntries) {
+            Long size = diskEntries.remove(key);
+            if (size != null) {
+                diskBytes -= size;
+            }
+        }
+    }
+
+    private void deleteFromDisk(List<String> keys) {
+        for (String key : keys) {
+            try {
+                Files.deleteIfExists(directory.resolve(key));
+                diskEvictions.increment();
+            } catch (IOException e) {
+                log.warn("Could not delete cached result {}", directory.resolve(key), e);
+            }
+        }
+    }
+
+    private static byte[] pack(List<byte[]> results) {
+        try {
+            ByteArrayOutputStream packed = new ByteArrayOutputStream();
+            DataOutputStream output = new DataOutputStream(packed);
+            output.writeInt(results.size());
+            for (byte[] result : results) {
+                output.writeInt(result.length);
+                output.write(result);
+            }
+            return packed.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static List<byte[]> unpack(byte[] packed) {
+        ByteBuffer input = ByteBuffer.wrap(packed);
+        int size = input.getInt();
+        List<byte[]> results = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            byte[] result = new byte[input.getInt()];
+            input.get(result);
+            results.add(result);
+        }
+        return results;
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private static void update(MessageDigest digest, Object parameter) {
+        if (parameter instanceof Iterable) {
+            for (Object element : (Iterable<?>) parameter) {
+                update(digest, element);
+            }
+            return;
+        }
+        byte[] content;
+        if (parameter instanceof byte[]) {
+            content = (byte[]) parameter;
+        } else if (parameter instanceof PdfSource) {
+            updateWithSource(digest, (PdfSource) parameter);
+            return;
+        } else {
+            content = String.valueOf(parameter).getBytes(StandardCharsets.UTF_8);
+        }
+        // every part is prefixed with its length, so adjacent parts can not be confused
+        digest.update(ByteBuffer.allocate(8).putLong(content.length).array());
+        digest.update(content);
+    }
+
+    private static void updateWithSource(MessageDigest digest, PdfSource source) {
+        try {
+            RandomAccessSource content = source.openSource();
+            try {
+                long length = content.length();
+                digest.update(ByteBuffer.allocate(8).putLong(length).array());
+                byte[] buffer = new byte[(int) Math.min(DIGEST_BUFFER_SIZE, Math.max(1, length))];
+                for (long position = 0; position < length; ) {
+                    int read = content.get(position, buffer, 0, (int) Math.min(buffer.length, length - position));
+                    if (read <= 0) {
+                        throw new IOException("Unexpected end of document at " + position);
+                    }
+                    digest.update(buffer, 0, read);
+                    position += read;
+                }
+            } finally {
+                content.close();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public String toString() {
+        return "PdfResultCache(maxBytes=" + this.maxBytes + ", directory=" + this.directory + ", maxDiskBytes="
+                + this.maxDiskBytes + ", hits=" + getHits()
+                + ", diskHits=" + getDiskHits() + ", misses=" + getMisses() + ")";
+    }
+
+    public static class PdfResultCacheBuilder {
+        private long maxBytes = 64L * 1024 * 1024;
+        private Path directory;
+        private long maxDiskBytes = DEFAULT_MAX_DISK_BYTES;
+
+        PdfResultCacheBuilder() {
+        }
+
+        /**
+         * @param maxBytes the maximum total size of the results kept in memory, 64 MiB by default
+         */
+        public PdfResultCacheBuilder maxBytes(long maxBytes) {
+            this.maxBytes = maxBytes;
+            return this;
+        }
+
+        /**
+         * @param directory the directory of the disk tier, it is created if it does not exist. No disk tier by default.
+         */
+        public PdfResultCacheBuilder directory(Path directory) {
+            this.directory = directory;
+            return this;
+        }
+
+        /**
+         * @param maxDiskBytes the maximum total size of the result files in the directory, 1 GiB by default
+         */
+        public PdfResultCacheBuilder maxDiskBytes(long maxDiskBytes) {
+            this.maxDiskBytes = maxDiskBytes;
+            return this;
+        }
+
+        public PdfResultCache build() {
+            return new PdfResultCache(this.maxBytes, this.directory, this.maxDiskBytes);
+        }
+
+        public String toString() {
+            return "PdfResultCache.PdfResultCacheBuilder(maxBytes=" + this.maxBytes + ", directory=" + this.directory
+                    + ", maxDiskBytes=" + this.maxDiskBytes + ")";
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package com.innodox.util;
+
+import com.itextpdf.text.io.RandomAccessSource;
+import com.itextpdf.text.io.RandomAccessSourceFactory;
+import com.itextpdf.text.pdf.PdfReader;
+import com.itextpdf.text.pdf.RandomAccessFileOrArray;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Read-only origin of a PDF document, either a byte array on the heap or a file opened through memory-mapped I/O.
+ * <p>
+ * A source can be opened any number of times and from several threads, every call of {@link #openReader()} returns a
+ * new {@link PdfReader} with its own position over the shared bytes. Readers of a file that are open at the same time
+ * share one mapping of the file.
+ */
+public abstract class PdfSource {
+
+    private PdfSource() {
+
+    }
+
+    /**
+     * Creates a source over the given document bytes. The array is not copied, so it must not be modified afterwards.
+     *
+     * @param document the PDF document
+     * @return the source
+     */
+    public static PdfSource of(byte[] document) {
+        return new ByteArraySource(document);
+    }
+
+    /**
+     * Creates a source over the given file. The file is memory-mapped when a reader is opened, so the document bytes
+     * stay in the page cache instead of the Java heap. The mapping is shared by all readers of the source that are
+     * open at the same time and released when the last of them is closed. Files larger than 2 GB are mapped once per
+     * reader.
+     *
+     * @param path the PDF file
+     * @return the source
+     */
+    public static PdfSource of(Path path) {
+        return new PathSource(path);
+    }
+
+    /**
+     * @return the length of the document in bytes
+     * @throws IOException if the length can not be determined
+     */
+    public abstract long length() throws IOException;
+
+    /**
+     * Opens a reader that parses every object of the document up front.
+     *
+     * @return a new reader, the caller is responsible for closing it
+     * @throws IOException if the document can not be read
+     */
+    public PdfReader openReader() throws IOException {
+        return new PdfReader(new RandomAccessFileOrArray(openSource()), null, false);
+    }
+
+    /**
+     * Opens a reader that reads only the cross-reference table and the trailer up front, every other object is
+     * resolved on first access.
+     *
+     * @return a new reader, the caller is responsible for closing it
+     * @throws IOException if the document can not be read
+     */
+    public PdfReader openPartialReader() throws IOException {
+        return new PdfReader(new RandomAccessFileOrArray(openSource()), null, true);
+    }
+
+    abstract RandomAccessSource openSource() throws IOException;
+
+    private static final class ByteArraySource extends PdfSource {
+
+        private final byte[] document;
+
+        private ByteArraySource(byte[] document) {
+            this.document = document;
+        }
+
+        @Override
+        public long length() {
+            return document.length;
+        }
+
+        @Override
+        RandomAccessSource openSource() {
+            return new RandomAccessSourceFactory().createSource(document);
+        }
+
+        @Override
+        public String toString() {
+            return "PdfSource(bytes=" + document.length + ")";
+        }
+    }
+
+    private static final class PathSource extends PdfSource {
+
+        private final Path path;
+        // guarded by this
+        private ByteBuffer mapping;
+        private int openViews;
+
+        private PathSource(Path path) {
+            this.path = path;
+        }
+
+        @Override
+        public long length() throws IOException {
+            return Files.size(path);
+        }
+
+        @Override
+        synchronized RandomAccessSource openSource() throws IOException {
+            if (mapping == null) {
+                try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                    if (channel.size() > Integer.MAX_VALUE) {
+                        return new RandomAccessSourceFactory()
+                                .setForceRead(false)
+                                .setUsePlainRandomAccess(false)
+                                .createBestSource(channel);
+                    }
+                    // the mapping stays valid after the channel is closed
+                    mapping = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                }
+            }
+            openViews++;
+            return new MappedView(this, mapping.duplicate());
+        }
+
+        private synchronized void release() {
+            if (--openViews == 0) {
+                // unmapped by the garbage collector once the last view is gone
+                mapping = null;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "PdfSource(path=" + path + ")";
+        }
+    }
+
+    /**
+     * View with its own position over the shared mapping of a {@link PathSource}. A view is used by a single reader,
+     * closing it releases the mapping once all views of the source are closed.
+     */
+    private static final class MappedView implements RandomAccessSource {
+
+        private final PathSource owner;
+        private final ByteBuffer buffer;
+        private boolean closed;
+
+        private MappedView(PathSource owner, ByteBuffer buffer) {
+            this.owner = owner;
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int get(long position) {
+            if (position >= buffer.limit()) {
+                return -1;
+            }
+            return buffer.get((int) position) & 0xff;
+        }
+
+        @Override
+        public int get(long position, byte[] bytes, int off, int len) {
+            if (position >= buffer.limit()) {
+                return -1;
+            }
+            int length = Math.min(len, buffer.limit() - (int) position);
+            buffer.position((int) position);
+            buffer.get(bytes, off, length);
+            return length;
+        }
+
+        @Override
+        public long length() {
+            return buffer.limit();
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                owner.release();
+            }
+        }
+    }
+}
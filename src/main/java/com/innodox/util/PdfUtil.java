@@ -1,8 +1,15 @@
 package com.innodox.util;
 
+import com.innodox.document.init.PdfProcessorChain;
+import com.innodox.document.init.PdfStamperProcessor;
 import com.innodox.exception.ResourceNotFoundException;
+import com.innodox.metrics.Measurement;
+import com.innodox.metrics.PdfPhase;
+import com.innodox.model.PdfAttachmentInfo;
 import com.innodox.model.folding.FoldingLine;
+import com.innodox.model.folding.FoldingLineSet;
 import com.itextpdf.text.BaseColor;
+import com.itextpdf.text.Document;
 import com.itextpdf.text.DocumentException;
 
 import com.itextpdf.text.pdf.*;
@@ -10,9 +17,19 @@ import org.apache.commons.io.FilenameUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+import java.util.zip.InflaterInputStream;
 
 
 public class PdfUtil {
@@ -20,6 +37,7 @@ public class PdfUtil {
     private static final BaseColor BASE_COLOR = new BaseColor(127, 127, 127);
     private static final Logger log
             = LoggerFactory.getLogger(PdfUtil.class);
+
     /**
      * Retrieves the attachments with PDF files from the given PDF byte array.
      *
@@ -31,105 +49,533 @@ public class PdfUtil {
      */
 
     public static Map<String, byte[]> getPdfAttachments(byte[] pdf, String... attachmentExtensions) throws IOException {
+        return getPdfAttachments(PdfSource.of(pdf), attachmentExtensions);
+    }
+
+    /**
+     * Retrieves the attachments with PDF files from the given PDF file. The file is memory-mapped instead of being
+     * loaded onto the heap.
+     *
+     * @param pdf The PDF file from which to retrieve the attachments.
+     * @param attachmentExtensions The allowed attachment file extensions. If not provided, all attachments will be retrieved.
+     * @return A map containing the names and byte arrays of the PDF attachments.
+     * @throws IOException If an error occurs while reading the PDF file.
+     * @see #getPdfAttachments(byte[], String...)
+     */
+
+    public static Map<String, byte[]> getPdfAttachments(Path pdf, String... attachmentExtensions) throws IOException {
+        return getPdfAttachments(PdfSource.of(pdf), attachmentExtensions);
+    }
+
+    private static Map<String, byte[]> getPdfAttachments(PdfSource pdf, String... attachmentExtensions) throws IOException {
         Map<String, byte[]> files = new HashMap<>();
 
-        PdfReader reader = new PdfReader(pdf);
-        PdfDictionary root = reader.getCatalog();
-        PdfDictionary names = root.getAsDict(PdfName.NAMES); // may be null
-        PdfDictionary embeddedFilesDict = names.getAsDict(PdfName.EMBEDDEDFILES); //may be null
-        PdfArray embeddedFiles = embeddedFilesDict.getAsArray(PdfName.NAMES); // may be null
-
-        int len = embeddedFiles.size();
-        for (int i = 0; i < len; i += 2) {
-            PdfString name = embeddedFiles.getAsString(i); // should always be present
-            log.debug("PdfString name: {}", name);
-
-            if (name != null) {
-                if (attachmentExtensions != null &&
-                        !Arrays.asList(attachmentExtensions).contains(FilenameUtils.getExtension(name.toUnicodeString()))) {
-                    log.debug(
-                            "Extension is not part of required attachment extensions. Returning emptyMap. Extension: {}",
-                            FilenameUtils.getExtension(name.toUnicodeString()));
-                    return Collections.emptyMap();
+        try (Measurement measurement = Measurement.start("getPdfAttachments")) {
+            PdfReader reader = pdf.openReader();
+            try {
+                measurement.phase(PdfPhase.READ, reader.getNumberOfPages(), reader.getFileLength());
+                PdfDictionary root = reader.getCatalog();
+                PdfDictionary names = root.getAsDict(PdfName.NAMES); // may be null
+                PdfDictionary embeddedFilesDict = names == null ? null : names.getAsDict(PdfName.EMBEDDEDFILES); //may be null
+                PdfArray embeddedFiles = embeddedFilesDict == null ? null : embeddedFilesDict.getAsArray(PdfName.NAMES); // may be null
+                if (embeddedFiles == null) {
+                    log.debug("Document does not contain embedded files.");
+                    measurement.stop(0, 0);
+                    return files;
                 }
 
-                PdfDictionary fileSpec = embeddedFiles.getAsDict(i + 1);
+                int len = embeddedFiles.size();
+                for (int i = 0; i < len; i += 2) {
+                    PdfString name = embeddedFiles.getAsString(i); // should always be present
+                    log.debug("PdfString name: {}", name);
+
+                    if (name != null) {
+                        if (!isAllowedExtension(name.toUnicodeString(), attachmentExtensions)) {
+                            log.debug("Extension is not part of required attachment extensions. Skipping: {}",
+                                    name.toUnicodeString());
+                            continue;
+                        }
+
+                        PRStream stream = getEmbeddedFileStream(embeddedFiles.getAsDict(i + 1));
+                        if (stream != null) {
+                            files.put(name.toUnicodeString(), PdfReader.getStreamBytes(stream));
+                        }
+                    }
+                }
+                measurement.stop(0, files.values().stream().mapToLong(data -> data.length).sum());
+                return files;
+            } finally {
+                reader.close();
+            }
+        }
+    }
+
+    /**
+     * Streams the attachments of the given PDF byte array into a sink, one attachment at a time.
+     * Unlike {@link #getPdfAttachments(byte[], String...)} the attachments are never collected in memory, each embedded
+     * stream is inflated directly into the sink and released before the next one is read. The whole embedded files
+     * name tree is visited, including its /Kids.
+     *
+     * @param pdf The PDF byte array from which to retrieve the attachments.
+     * @param sink The sink receiving the name and the decoded content of every attachment.
+     * @param attachmentExtensions The allowed attachment file extensions. If not provided, all attachments will be
+     *                             streamed, otherwise attachments with other extensions are skipped.
+     * @return the number of attachments handed to the sink
+     * @throws IOException If an error occurs while reading the PDF byte array or the sink fails.
+     */
 
-                PdfDictionary streams = fileSpec.getAsDict(PdfName.EF);
-                PRStream stream;
-                if (streams.contains(PdfName.UF)) {
-                    log.debug("streams contains PdfName.UF");
-                    stream = (PRStream) streams.getAsStream(PdfName.UF);
-                } else {
-                    log.debug("streams does not contain PdfName.UF");
-                    stream = (PRStream) streams.getAsStream(PdfName.F); // Default stream for backwards compatibility
+    public static int streamPdfAttachments(byte[] pdf, PdfAttachmentSink sink, String... attachmentExtensions) throws IOException {
+        return streamPdfAttachments(PdfSource.of(pdf), sink, attachmentExtensions);
+    }
+
+    /**
+     * Streams the attachments of the given PDF file into a sink, one attachment at a time. The file is memory-mapped
+     * instead of being loaded onto the heap.
+     *
+     * @param pdf The PDF file from which to retrieve the attachments.
+     * @param sink The sink receiving the name and the decoded content of every attachment.
+     * @param attachmentExtensions The allowed attachment file extensions. If not provided, all attachments will be streamed.
+     * @return the number of attachments handed to the sink
+     * @throws IOException If an error occurs while reading the PDF file or the sink fails.
+     * @see #streamPdfAttachments(byte[], PdfAttachmentSink, String...)
+     */
+
+    public static int streamPdfAttachments(Path pdf, PdfAttachmentSink sink, String... attachmentExtensions) throws IOException {
+        return streamPdfAttachments(PdfSource.of(pdf), sink, attachmentExtensions);
+    }
+
+    private static int streamPdfAttachments(PdfSource pdf, PdfAttachmentSink sink, String... attachmentExtensions) throws IOException {
+        try (Measurement measurement = Measurement.start("streamPdfAttachments")) {
+            PdfReader reader = pdf.openReader();
+            measurement.phase(PdfPhase.READ, reader.getNumberOfPages(), reader.getFileLength());
+            try {
+                PdfDictionary embeddedFiles = EmbeddedFiles.root(reader);
+                if (embeddedFiles == null) {
+                    log.debug("Document does not contain embedded files.");
+                    measurement.stop(0, 0);
+                    return 0;
                 }
 
-                if (stream != null) {
-                    files.put(name.toUnicodeString(), PdfReader.getStreamBytes(stream));
+                AtomicInteger streamed = new AtomicInteger();
+                EmbeddedFiles.forEach(embeddedFiles, (name, fileSpec) -> {
+                    if (!isAllowedExtension(name, attachmentExtensions)) {
+                        log.debug("Skipping attachment: {}", name);
+                        return;
+                    }
+
+                    PRStream stream = getEmbeddedFileStream(fileSpec);
+                    if (stream != null) {
+                        try (InputStream data = openDecodedStream(stream)) {
+                            sink.accept(name, data);
+                        }
+                        streamed.incrementAndGet();
+                    }
+                });
+                int count = streamed.get();
+                log.debug("Streamed attachments: {}", count);
+                // the attachments are streamed into the sink, their size is not known here
+                measurement.stop(0, 0);
+                return count;
+            } finally {
+                reader.close();
+            }
+        }
+    }
+
+    /**
+     * Extracts the attachments of the given PDF byte array into a directory, one attachment at a time.
+     * Only the file name of an attachment is used, names without a usable file name like "" or ".." are written as
+     * "attachment". Attachments that end up with the same file name get a counter, like "report (1).pdf", existing
+     * files in the directory with the same name are overwritten.
+     *
+     * @param pdf The PDF byte array from which to retrieve the attachments.
+     * @param targetDirectory The directory the attachments are written to, it is created if it does not exist.
+     * @param attachmentExtensions The allowed attachment file extensions. If not provided, all attachments will be
+     *                             extracted.
+     * @return the number of extracted attachments
+     * @throws IOException If an error occurs while reading the PDF byte array or writing the files.
+     */
+
+    public static int extractPdfAttachments(byte[] pdf, Path targetDirectory, String... attachmentExtensions) throws IOException {
+        return extractPdfAttachments(PdfSource.of(pdf), targetDirectory, attachmentExtensions);
+    }
+
+    /**
+     * Extracts the attachments of the given PDF file into a directory, one attachment at a time.
+     *
+     * @param pdf The PDF file from which to retrieve the attachments.
+     * @param targetDirectory The directory the attachments are written to, it is created if it does not exist.
+     * @param attachmentExtensions The allowed attachment file extensions. If not provided, all attachments will be extracted.
+     * @return the number of extracted attachments
+     * @throws IOException If an error occurs while reading the PDF file or writing the files.
+     * @see #extractPdfAttachments(byte[], Path, String...)
+     */
+
+    public static int extractPdfAttachments(Path pdf, Path targetDirectory, String... attachmentExtensions) throws IOException {
+        return extractPdfAttachments(PdfSource.of(pdf), targetDirectory, attachmentExtensions);
+    }
+
+    private static int extractPdfAttachments(PdfSource pdf, Path targetDirectory, String... attachmentExtensions) throws IOException {
+        Files.createDirectories(targetDirectory);
+        Path directory = targetDirectory.toAbsolutePath().normalize();
+        Set<String> written = new HashSet<>();
+        return streamPdfAttachments(pdf, (name, data) -> {
+            Path target = directory.resolve(uniqueFileName(name, written)).normalize();
+            if (!directory.equals(target.getParent())) {
+                throw new IOException("Attachment name points outside of the target directory: " + name);
+            }
+            log.debug("Writing attachment {} to {}", name, target);
+            Files.copy(data, target, StandardCopyOption.REPLACE_EXISTING);
+        }, attachmentExtensions);
+    }
+
+    /**
+     * Returns the file name an attachment is extracted to. Only the file name of the attachment name is used, so that
+     * it can not point outside of the target directory, and a counter is added if the name was already used.
+     *
+     * @param name the attachment name
+     * @param written the file names already used, the returned name is added
+     * @return the file name
+     */
+
+    private static String uniqueFileName(String name, Set<String> written) {
+        String fileName = FilenameUtils.getName(name).trim();
+        if (fileName.isEmpty() || fileName.equals(".") || fileName.equals("..")) {
+            fileName = "attachment";
+        }
+        String baseName = FilenameUtils.getBaseName(fileName);
+        String extension = FilenameUtils.getExtension(fileName);
+        String candidate = fileName;
+        for (int i = 1; !written.add(candidate.toLowerCase(Locale.ROOT)); i++) {
+            candidate = baseName + " (" + i + ")" + (extension.isEmpty() ? "" : "." + extension);
+        }
+        return candidate;
+    }
+
+    /**
+     * Lists the attachments of the given PDF byte array without reading their content. Only the embedded files name
+     * tree, including its /Kids, and the dictionaries of every attachment are parsed, the content of an attachment is
+     * read when {@link PdfAttachmentInfo#getData()} is called.
+     *
+     * @param pdf The PDF byte array from which to list the attachments.
+     * @param attachmentExtensions The allowed attachment file extensions. If not provided, all attachments will be
+     *                             listed, otherwise attachments with other extensions are skipped.
+     * @return the attachments in the order of the name tree, empty if the document has no attachments
+     * @throws IOException If an error occurs while reading the PDF byte array.
+     */
+
+    public static List<PdfAttachmentInfo> listPdfAttachments(byte[] pdf, String... attachmentExtensions) throws IOException {
+        return listPdfAttachments(PdfSource.of(pdf), attachmentExtensions);
+    }
+
+    /**
+     * Lists the attachments of the given PDF file without reading their content. The file is memory-mapped instead of
+     * being loaded onto the heap, it must not change while the content of the attachments is requested.
+     *
+     * @param pdf The PDF file from which to list the attachments.
+     * @param attachmentExtensions The allowed attachment file extensions. If not provided, all attachments will be listed.
+     * @return the attachments in the order of the name tree, empty if the document has no attachments
+     * @throws IOException If an error occurs while reading the PDF file.
+     * @see #listPdfAttachments(byte[], String...)
+     */
+
+    public static List<PdfAttachmentInfo> listPdfAttachments(Path pdf, String... attachmentExtensions) throws IOException {
+        return listPdfAttachments(PdfSource.of(pdf), attachmentExtensions);
+    }
+
+    private static List<PdfAttachmentInfo> listPdfAttachments(PdfSource pdf, String... attachmentExtensions) throws IOException {
+        try (Measurement measurement = Measurement.start("listPdfAttachments")) {
+            PdfReader reader = pdf.openPartialReader();
+            measurement.phase(PdfPhase.READ, 0, reader.getFileLength());
+            try {
+                List<PdfAttachmentInfo> attachments = new ArrayList<>();
+                PdfDictionary embeddedFiles = EmbeddedFiles.root(reader);
+                if (embeddedFiles != null) {
+                    EmbeddedFiles.forEach(embeddedFiles, (name, fileSpec) -> {
+                        if (!isAllowedExtension(name, attachmentExtensions)) {
+                            log.debug("Skipping attachment: {}", name);
+                            return;
+                        }
+                        PdfAttachmentInfo attachment = EmbeddedFiles.describe(pdf, name, fileSpec);
+                        if (attachment != null) {
+                            attachments.add(attachment);
+                        }
+                    });
                 }
+                measurement.stop(0, 0);
+                return attachments;
+            } finally {
+                reader.close();
             }
         }
-        return files;
     }
 
     /**
-     * Draws a line on a PDF document.
+     * Retrieves a single attachment of the given PDF byte array by its name. The embedded files name tree is searched
+     * through its /Limits, including trees split into /Kids, and only the nodes on the path to the attachment and its
+     * embedded stream are read.
      *
-     * @param pdfContentByte the PdfContentByte object that represents the content of the PDF document
-     * @param foldingLine    the FoldingLine object representing the start and end coordinates of the line
+     * @param pdf The PDF byte array from which to retrieve the attachment.
+     * @param name The attachment name as stored in the embedded files name tree.
+     * @return the decoded content of the attachment, null if the document has no attachment with that name
+     * @throws IOException If an error occurs while reading the PDF byte array.
      */
 
-    private static void drawLine(PdfContentByte pdfContentByte, FoldingLine foldingLine) {
-        float startX = foldingLine.getStart().getXCoordinate();
-        float startY = foldingLine.getStart().getYCoordinate();
-        float endX = foldingLine.getEnd().getXCoordinate();
-        float endY = foldingLine.getEnd().getYCoordinate();
+    public static byte[] getPdfAttachment(byte[] pdf, String name) throws IOException {
+        return getPdfAttachment(PdfSource.of(pdf), name);
+    }
+
+    /**
+     * Retrieves a single attachment of the given PDF file by its name. The file is memory-mapped instead of being
+     * loaded onto the heap, parts of the file that are not on the path to the attachment are not touched.
+     *
+     * @param pdf The PDF file from which to retrieve the attachment.
+     * @param name The attachment name as stored in the embedded files name tree.
+     * @return the decoded content of the attachment, null if the document has no attachment with that name
+     * @throws IOException If an error occurs while reading the PDF file.
+     * @see #getPdfAttachment(byte[], String)
+     */
 
-        log.trace("Drawing line from x: {} y: {} to x: {} y: {}", startX, startY, endX, endY);
-        pdfContentByte.moveTo(startX, startY);
-        pdfContentByte.lineTo(endX, endY);
+    public static byte[] getPdfAttachment(Path pdf, String name) throws IOException {
+        return getPdfAttachment(PdfSource.of(pdf), name);
+    }
+
+    private static byte[] getPdfAttachment(PdfSource pdf, String name) throws IOException {
+        try (Measurement measurement = Measurement.start("getPdfAttachment")) {
+            PdfReader reader = pdf.openPartialReader();
+            measurement.phase(PdfPhase.READ, 0, reader.getFileLength());
+            try {
+                PdfDictionary embeddedFiles = EmbeddedFiles.root(reader);
+                PdfDictionary fileSpec = embeddedFiles == null ? null : EmbeddedFiles.find(embeddedFiles, name);
+                PRStream stream = getEmbeddedFileStream(fileSpec);
+                if (stream == null) {
+                    log.debug("Attachment not found: {}", name);
+                    measurement.stop(0, 0);
+                    return null;
+                }
+                byte[] data = PdfReader.getStreamBytes(stream);
+                measurement.stop(0, data.length);
+                return data;
+            } finally {
+                reader.close();
+            }
+        }
+    }
+
+    /**
+     * Returns the embedded file stream of a file specification, preferring the unicode entry.
+     *
+     * @param fileSpec the file specification dictionary
+     * @return the embedded stream or null if the file specification does not embed a file
+     */
+
+    private static PRStream getEmbeddedFileStream(PdfDictionary fileSpec) {
+        PdfDictionary streams = fileSpec == null ? null : fileSpec.getAsDict(PdfName.EF);
+        if (streams == null) {
+            return null;
+        }
+        if (streams.contains(PdfName.UF)) {
+            log.debug("streams contains PdfName.UF");
+            return (PRStream) streams.getAsStream(PdfName.UF);
+        }
+        log.debug("streams does not contain PdfName.UF");
+        return (PRStream) streams.getAsStream(PdfName.F); // Default stream for backwards compatibility
+    }
+
+    /**
+     * Opens a stream on the decoded content of a PDF stream. Plain and flate encoded streams are inflated on the fly,
+     * any other filter chain is decoded by iText in one go.
+     *
+     * @param stream the stream to decode
+     * @return the decoded content
+     * @throws IOException if the stream can not be read
+     */
+
+    private static InputStream openDecodedStream(PRStream stream) throws IOException {
+        byte[] raw = PdfReader.getStreamBytesRaw(stream);
+        PdfObject filter = PdfReader.getPdfObjectRelease(stream.get(PdfName.FILTER));
+        if (filter != null && filter.isArray() && ((PdfArray) filter).size() == 1) {
+            filter = PdfReader.getPdfObjectRelease(((PdfArray) filter).getPdfObject(0));
+        }
+
+        if (filter == null) {
+            return new ByteArrayInputStream(raw);
+        }
+        if (PdfName.FLATEDECODE.equals(filter) && stream.get(PdfName.DECODEPARMS) == null) {
+            return new InflaterInputStream(new ByteArrayInputStream(raw));
+        }
+        return new ByteArrayInputStream(PdfReader.decodeBytes(raw, stream));
+    }
+
+    private static boolean isAllowedExtension(String name, String... attachmentExtensions) {
+        return attachmentExtensions == null
+                || attachmentExtensions.length == 0
+                || Arrays.asList(attachmentExtensions).contains(FilenameUtils.getExtension(name));
     }
 
     /**
      * Adds folding lines to a given PDF document.
      *
      * @param document      the original PDF document as a byte array
-     * @param foldingLines  a list of FoldingLine objects representing the lines to be added
+     * @param foldingLines  a list of FoldingLine objects representing the lines to be added, compiled into a
+     *                      {@link FoldingLineSet} that is shared by equal lists
      * @return the modified PDF document as a byte array
      * @throws RuntimeException if there is an error while drawing the lines on the PDF document
      */
 
     public static byte[] addFoldingLines(byte[] document, List<FoldingLine> foldingLines) {
-        // TODO return meta information so that it can be logged in the service layer
-        try {
-            PdfReader reader = new PdfReader(document);
-            int numberOfPages = reader.getNumberOfPages();
+        return addFoldingLines(PdfSource.of(document), FoldingLineSet.of(foldingLines), null);
+    }
 
-            ByteArrayOutputStream bos = new ByteArrayOutputStream();
-            PdfStamper stamper = new PdfStamper(reader, bos);
+    /**
+     * Adds folding lines to a given PDF file. The file is memory-mapped instead of being loaded onto the heap.
+     *
+     * @param document      the original PDF file
+     * @param foldingLines  a list of FoldingLine objects representing the lines to be added, compiled into a
+     *                      {@link FoldingLineSet} that is shared by equal lists
+     * @return the modified PDF document as a byte array
+     * @throws RuntimeException if there is an error while drawing the lines on the PDF document
+     */
 
-            PdfContentByte pdfContentByte;
-            for (int i = 1; i <= numberOfPages; i++) {
-                log.debug("Adding lines to page: {}", i);
-                pdfContentByte = stamper.getOverContent(i);
-                pdfContentByte.saveState();
-                pdfContentByte.setColorStroke(BASE_COLOR);
-                for (FoldingLine foldingLine : foldingLines) {
-                    drawLine(pdfContentByte, foldingLine);
+    public static byte[] addFoldingLines(Path document, List<FoldingLine> foldingLines) {
+        return addFoldingLines(PdfSource.of(document), FoldingLineSet.of(foldingLines), null);
+    }
+
+    /**
+     * Adds folding lines to a given PDF document, stamping page ranges concurrently if the document is large enough.
+     *
+     * @param document          the original PDF document as a byte array
+     * @param foldingLines      a list of FoldingLine objects representing the lines to be added, compiled into a
+     *                          {@link FoldingLineSet} that is shared by equal lists
+     * @param parallelStamping  the parallel stamping mode, documents below its threshold or with document level
+     *                          structures like outlines or forms are stamped sequentially
+     * @return the modified PDF document as a byte array
+     * @throws RuntimeException if there is an error while drawing the lines on the PDF document
+     * @see ParallelStamping
+     */
+
+    public static byte[] addFoldingLines(byte[] document, List<FoldingLine> foldingLines, ParallelStamping parallelStamping) {
+        return addFoldingLines(PdfSource.of(document), FoldingLineSet.of(foldingLines), parallelStamping);
+    }
+
+    /**
+     * Adds folding lines to a given PDF file, stamping page ranges concurrently if the document is large enough.
+     * The file is memory-mapped instead of being loaded onto the heap.
+     *
+     * @param document          the original PDF file
+     * @param foldingLines      a list of FoldingLine objects representing the lines to be added, compiled into a
+     *                          {@link FoldingLineSet} that is shared by equal lists
+     * @param parallelStamping  the parallel stamping mode, documents below its threshold or with document level
+     *                          structures like outlines or forms are stamped sequentially
+     * @return the modified PDF document as a byte array
+     * @throws RuntimeException if there is an error while drawing the lines on the PDF document
+     * @see ParallelStamping
+     */
+
+    public static byte[] addFoldingLines(Path document, List<FoldingLine> foldingLines, ParallelStamping parallelStamping) {
+        return addFoldingLines(PdfSource.of(document), FoldingLineSet.of(foldingLines), parallelStamping);
+    }
+
+    /**
+     * Adds a compiled set of folding lines to a given PDF document. The lines are drawn once per page size and every
+     * page references the same form XObject.
+     *
+     * @param document      the original PDF document as a byte array
+     * @param foldingLines  the compiled lines, for example {@link FoldingLineSet#DL}
+     * @return the modified PDF document as a byte array
+     * @throws RuntimeException if there is an error while drawing the lines on the PDF document
+     */
+
+    public static byte[] addFoldingLines(byte[] document, FoldingLineSet foldingLines) {
+        return addFoldingLines(PdfSource.of(document), foldingLines, null);
+    }
+
+    /**
+     * Adds a compiled set of folding lines to a given PDF file. The file is memory-mapped instead of being loaded onto
+     * the heap.
+     *
+     * @param document      the original PDF file
+     * @param foldingLines  the compiled lines, for example {@link FoldingLineSet#DL}
+     * @return the modified PDF document as a byte array
+     * @throws RuntimeException if there is an error while drawing the lines on the PDF document
+     */
+
+    public static byte[] addFoldingLines(Path document, FoldingLineSet foldingLines) {
+        return addFoldingLines(PdfSource.of(document), foldingLines, null);
+    }
+
+    /**
+     * Adds a compiled set of folding lines to a given PDF document, stamping page ranges concurrently if the document
+     * is large enough.
+     *
+     * @param document          the original PDF document
+     * @param foldingLines      the compiled lines, for example {@link FoldingLineSet#DL}
+     * @param parallelStamping  the parallel stamping mode, null to always stamp sequentially
+     * @return the modified PDF document as a byte array
+     * @throws RuntimeException if there is an error while drawing the lines on the PDF document
+     */
+
+    public static byte[] addFoldingLines(PdfSource document, FoldingLineSet foldingLines, ParallelStamping parallelStamping) {
+        // TODO return meta information so that it can be logged in the service layer
+        try (Measurement measurement = Measurement.start("addFoldingLines")) {
+            if (parallelStamping != null) {
+                int numberOfPages = parallelStamping.applicablePageCount(document);
+                if (numberOfPages >= 0) {
+                    // the probe reads the page tree, the ranges stamp and write their pages concurrently
+                    measurement.phase(PdfPhase.READ, numberOfPages, document.length());
+                    byte[] result = parallelStamping.stamp(document, numberOfPages,
+                            () -> new FoldingLineStamp(foldingLines, BASE_COLOR), true);
+                    measurement.phase(PdfPhase.WRITE, numberOfPages, result.length);
+                    measurement.stop(numberOfPages, result.length);
+                    log.debug("Line drawing completed.");
+                    return result;
                 }
-                pdfContentByte.stroke();
-                pdfContentByte.restoreState();
             }
-            stamper.close();
-            reader.close();
-            log.debug("Line drawing completed.");
-            return bos.toByteArray();
+            PdfReader reader = document.openReader();
+            try {
+                int numberOfPages = reader.getNumberOfPages();
+                measurement.phase(PdfPhase.READ, numberOfPages, reader.getFileLength());
+
+                ByteArrayOutputStream bos = new ByteArrayOutputStream();
+                PdfStamper stamper = new PdfStamper(reader, bos);
+                OutputProfile.getDefault().apply(stamper);
+                foldingLineProcessor(foldingLines).process(stamper);
+                measurement.phase(PdfPhase.STAMP, numberOfPages, 0);
+                stamper.close();
+                measurement.phase(PdfPhase.WRITE, numberOfPages, bos.size());
+                measurement.stop(numberOfPages, bos.size());
+                log.debug("Line drawing completed.");
+                return bos.toByteArray();
+            } finally {
+                reader.close();
+            }
         } catch (IOException | DocumentException e) {
             throw new RuntimeException("Could not draw lines on pdf document", e);
         }
     }
 
+    /**
+     * Returns a processor that adds a compiled set of folding lines to every page of a document, to be combined with
+     * other processors in a {@link PdfProcessorChain}, or to be appended as an incremental update through
+     * {@link IncrementalUpdate}.
+     *
+     * @param foldingLines  the compiled lines, for example {@link FoldingLineSet#DL}
+     * @return the processor
+     */
+
+    public static PdfStamperProcessor foldingLineProcessor(FoldingLineSet foldingLines) {
+        return stamper -> {
+            PdfReader reader = stamper.getReader();
+            FoldingLineStamp stamp = new FoldingLineStamp(foldingLines, BASE_COLOR);
+            for (int i = 1; i <= reader.getNumberOfPages(); i++) {
+                log.debug("Adding lines to page: {}", i);
+                // a rotating stamper draws in the coordinate space of the page as it is displayed
+                stamp.apply(stamper.getOverContent(i),
+                        stamper.isRotateContents() ? reader.getPageSizeWithRotation(i) : reader.getPageSize(i));
+            }
+        };
+    }
+
     /**
      * Returns the number of pages in a PDF document.
      *
@@ -139,17 +585,88 @@ public class PdfUtil {
      */
 
     public static int getPageCount(byte[] document) {
-        log.debug("Getting pages count of document. Data length: {}", document.length);
-        try {
-            PdfReader reader = new PdfReader(document);
-            int numberOfPages = reader.getNumberOfPages();
-            reader.close();
+        return getPageCount(PdfSource.of(document));
+    }
+
+    /**
+     * Returns the number of pages in a PDF file. The file is memory-mapped instead of being loaded onto the heap.
+     *
+     * @param document the PDF file
+     * @return the number of pages in the PDF document
+     * @throws RuntimeException if the document cannot be read
+     */
+
+    public static int getPageCount(Path document) {
+        return getPageCount(PdfSource.of(document));
+    }
+
+    /**
+     * Returns the number of pages in a PDF document given as a source. The count is read from the page tree root
+     * and only if that fails from a full parse of the document, the installed instrumentation receives a "fastPath"
+     * or a "fallback" event of the "getPageCount" operation.
+     *
+     * @param document the PDF document
+     * @return the number of pages in the PDF document
+     * @throws RuntimeException if the document cannot be read
+     */
+
+    public static int getPageCount(PdfSource document) {
+        try (Measurement measurement = Measurement.start("getPageCount")) {
+            long length = document.length();
+            log.debug("Getting pages count of document. Data length: {}", length);
+            int fastPageCount = readPageCountFromPageTreeRoot(document);
+            if (fastPageCount >= 0) {
+                measurement.event("fastPath");
+                log.debug("Page count: {}", fastPageCount);
+                measurement.phase(PdfPhase.READ, fastPageCount, length);
+                measurement.stop(fastPageCount, 0);
+                return fastPageCount;
+            }
+
+            measurement.event("fallback");
+            log.debug("Page tree root could not be used, parsing the whole document.");
+            PdfReader reader = document.openReader();
+            int numberOfPages;
+            try {
+                numberOfPages = reader.getNumberOfPages();
+            } finally {
+                reader.close();
+            }
+            measurement.phase(PdfPhase.READ, numberOfPages, length);
+            measurement.stop(numberOfPages, 0);
 
             log.debug("Page count: {}", numberOfPages);
 
             return numberOfPages;
         } catch (IOException e) {
-            throw new RuntimeException("Could not read document.");
+            throw new RuntimeException("Could not read document.", e);
+        }
+    }
+
+    /**
+     * Reads the page count from the /Count entry of the page tree root using a partial reader. Only the cross-reference
+     * table, the trailer, the catalog and the root /Pages node are resolved, the rest of the document is never touched.
+     *
+     * @param document the PDF document
+     * @return the page count or -1 if the cross-reference table is broken or the page tree root has no usable /Count
+     */
+
+    private static int readPageCountFromPageTreeRoot(PdfSource document) {
+        PdfReader reader = null;
+        try {
+            reader = document.openPartialReader();
+            if (reader.isRebuilt()) {
+                log.debug("Cross-reference table had to be rebuilt.");
+                return -1;
+            }
+            return reader.getNumberOfPages();
+        } catch (IOException | RuntimeException e) {
+            log.debug("Could not read page count from page tree root.", e);
+            return -1;
+        } finally {
+            if (reader != null) {
+                reader.close();
+            }
         }
     }
 
@@ -163,21 +680,310 @@ public class PdfUtil {
      */
 
     public static byte[] getPage(byte[] document, int pageNumber) {
-        log.debug("Getting page from document. Page: {}, document data length: {}", pageNumber, document.length);
-        try {
-            PdfReader reader = new PdfReader(document);
-            int numberOfPages = reader.getNumberOfPages();
+        return getPage(PdfSource.of(document), pageNumber);
+    }
 
-            validatePageNumber(pageNumber, numberOfPages);
+    /**
+     * Retrieves a specific page from a PDF file. The file is memory-mapped instead of being loaded onto the heap.
+     *
+     * @param document   The PDF file.
+     * @param pageNumber The page number to retrieve (1-based index).
+     * @return The byte array representation of the specified page.
+     * @throws RuntimeException If an error occurs while reading the document.
+     */
 
-            reader.selectPages(String.valueOf(pageNumber));
-            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-            PdfStamper stamper = new PdfStamper(reader, outputStream);
+    public static byte[] getPage(Path document, int pageNumber) {
+        return getPage(PdfSource.of(document), pageNumber);
+    }
+
+    private static byte[] getPage(PdfSource document, int pageNumber) {
+        try (Measurement measurement = Measurement.start("getPage")) {
+            log.debug("Getting page from document. Page: {}, document data length: {}", pageNumber, document.length());
+            PdfReader reader = document.openReader();
+            try {
+                int numberOfPages = reader.getNumberOfPages();
+                measurement.phase(PdfPhase.READ, numberOfPages, reader.getFileLength());
+
+                validatePageNumber(pageNumber, numberOfPages);
+
+                reader.selectPages(String.valueOf(pageNumber));
+                ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+                PdfStamper stamper = new PdfStamper(reader, outputStream);
+                OutputProfile.getDefault().apply(stamper);
+
+                stamper.close();
+                measurement.phase(PdfPhase.WRITE, 1, outputStream.size());
+                measurement.stop(1, outputStream.size());
+
+                log.debug("Pdf created from page: {}", pageNumber);
+                return outputStream.toByteArray();
+            } finally {
+                reader.close();
+            }
+        } catch (IOException | DocumentException e) {
+            throw new RuntimeException("Could not read document.");
+        }
+    }
+
+    /**
+     * Retrieves a specific page from a PDF document, optionally in partial-read mode. In partial-read mode only the
+     * cross-reference table is read up front and the page is copied with {@link PdfCopy}, so only the objects
+     * reachable from the requested page are ever loaded. Latency and allocation then scale with the size of the page
+     * instead of the size of the whole document.
+     *
+     * @param document    The byte array representation of the PDF document.
+     * @param pageNumber  The page number to retrieve (1-based index).
+     * @param partialRead true to load only the objects of the requested page, false to behave like
+     *                    {@link #getPage(byte[], int)}
+     * @return The byte array representation of the specified page.
+     * @throws RuntimeException If an error occurs while reading the document.
+     */
+
+    public static byte[] getPage(byte[] document, int pageNumber, boolean partialRead) {
+        return partialRead ? getPagePartially(PdfSource.of(document), pageNumber) : getPage(document, pageNumber);
+    }
+
+    /**
+     * Retrieves a specific page from a PDF file, optionally in partial-read mode. The file is memory-mapped instead of
+     * being loaded onto the heap.
+     *
+     * @param document    The PDF file.
+     * @param pageNumber  The page number to retrieve (1-based index).
+     * @param partialRead true to load only the objects of the requested page
+     * @return The byte array representation of the specified page.
+     * @throws RuntimeException If an error occurs while reading the document.
+     * @see #getPage(byte[], int, boolean)
+     */
+
+    public static byte[] getPage(Path document, int pageNumber, boolean partialRead) {
+        return partialRead ? getPagePartially(PdfSource.of(document), pageNumber) : getPage(document, pageNumber);
+    }
+
+    private static byte[] getPagePartially(PdfSource document, int pageNumber) {
+        PdfReader reader = null;
+        try (Measurement measurement = Measurement.start("getPage")) {
+            log.debug("Getting page from document in partial-read mode. Page: {}, document data length: {}",
+                    pageNumber, document.length());
+            reader = document.openPartialReader();
+            // a partial reader only reads the cross-reference table up front, the input size is the whole document
+            measurement.phase(PdfPhase.READ, reader.getNumberOfPages(), reader.getFileLength());
+
+            validatePageNumber(pageNumber, reader.getNumberOfPages());
+
+            byte[] page = copyPages(reader, Collections.singletonList(pageNumber));
+            measurement.phase(PdfPhase.WRITE, 1, page.length);
+            measurement.stop(1, page.length);
+            return page;
+        } catch (IOException e) {
+            throw new RuntimeException("Could not read document.");
+        } finally {
+            if (reader != null) {
+                reader.close();
+            }
+        }
+    }
+
+    /**
+     * Extracts several pages or page ranges from a PDF document in one pass. Every range produces its own document.
+     *
+     * @param document   The byte array representation of the PDF document.
+     * @param pageRanges The page ranges to extract in the syntax of {@link PdfReader#selectPages(String)}, e.g.
+     *                   "1", "2-4" or "5-".
+     * @return one document per range, in the order of the ranges
+     * @throws RuntimeException If an error occurs while reading the document.
+     */
+
+    public static List<byte[]> getPages(byte[] document, List<String> pageRanges) {
+        return getPages(PdfSource.of(document), pageRanges, null);
+    }
+
+    /**
+     * Extracts several pages or page ranges from a PDF file in one pass. The file is memory-mapped instead of being
+     * loaded onto the heap.
+     *
+     * @param document   The PDF file.
+     * @param pageRanges The page ranges to extract in the syntax of {@link PdfReader#selectPages(String)}.
+     * @return one document per range, in the order of the ranges
+     * @throws RuntimeException If an error occurs while reading the document.
+     */
+
+    public static List<byte[]> getPages(Path document, List<String> pageRanges) {
+        return getPages(PdfSource.of(document), pageRanges, null);
+    }
+
+    /**
+     * Extracts several pages or page ranges from a PDF document, writing the outputs concurrently on the given executor.
+     * Every task reads the shared source through its own partial reader, so only the objects of its pages are loaded.
+     *
+     * @param document   The PDF document.
+     * @param pageRanges The page ranges to extract in the syntax of {@link PdfReader#selectPages(String)}.
+     * @param executor   The executor writing the outputs, or null to write them one after another on the calling thread.
+     * @return one document per range, in the order of the ranges
+     * @throws RuntimeException If an error occurs while reading the document.
+     */
+
+    public static List<byte[]> getPages(PdfSource document, List<String> pageRanges, Executor executor) {
+        return copyPageGroups(document, numberOfPages -> {
+            List<List<Integer>> groups = new ArrayList<>();
+            for (String pageRange : pageRanges) {
+                List<Integer> pages = SequenceList.expand(pageRange, numberOfPages);
+                if (pages.isEmpty()) {
+                    throw new ResourceNotFoundException(String.format("Pages not found: %s", pageRange));
+                }
+                groups.add(pages);
+            }
+            return groups;
+        }, executor);
+    }
+
+    /**
+     * Splits a PDF document into chunks of consecutive pages in one pass. The last chunk may be shorter.
+     *
+     * @param document  The byte array representation of the PDF document.
+     * @param chunkSize The number of pages per chunk, 1 splits the document into single pages.
+     * @return the chunks in page order
+     * @throws RuntimeException If an error occurs while reading the document.
+     */
+
+    public static List<byte[]> split(byte[] document, int chunkSize) {
+        return split(PdfSource.of(document), chunkSize, null);
+    }
+
+    /**
+     * Splits a PDF file into chunks of consecutive pages in one pass. The file is memory-mapped instead of being loaded
+     * onto the heap.
+     *
+     * @param document  The PDF file.
+     * @param chunkSize The number of pages per chunk, 1 splits the document into single pages.
+     * @return the chunks in page order
+     * @throws RuntimeException If an error occurs while reading the document.
+     */
+
+    public static List<byte[]> split(Path document, int chunkSize) {
+        return split(PdfSource.of(document), chunkSize, null);
+    }
+
+    /**
+     * Splits a PDF document into chunks of consecutive pages, writing the chunks concurrently on the given executor.
+     *
+     * @param document  The PDF document.
+     * @param chunkSize The number of pages per chunk, 1 splits the document into single pages.
+     * @param executor  The executor writing the chunks, or null to write them one after another on the calling thread.
+     * @return the chunks in page order
+     * @throws RuntimeException If an error occurs while reading the document.
+     */
+
+    public static List<byte[]> split(PdfSource document, int chunkSize, Executor executor) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Chunk size must be positive: " + chunkSize);
+        }
+        return copyPageGroups(document, numberOfPages -> {
+            List<List<Integer>> groups = new ArrayList<>();
+            for (int first = 1; first <= numberOfPages; first += chunkSize) {
+                List<Integer> pages = new ArrayList<>();
+                for (int page = first; page < first + chunkSize && page <= numberOfPages; page++) {
+                    pages.add(page);
+                }
+                groups.add(pages);
+            }
+            return groups;
+        }, executor);
+    }
+
+    /**
+     * Copies groups of pages into separate documents. The document is opened once to plan the groups, without an
+     * executor the same reader writes every group, otherwise each group is written by a task with its own partial
+     * reader over the shared read-only source, because a {@link PdfReader} must not be used by several threads.
+     *
+     * @param document the PDF document
+     * @param planner  computes the page groups from the number of pages
+     * @param executor the executor writing the groups, or null to write them on the calling thread
+     * @return one document per group, in the order of the groups
+     */
+
+    private static List<byte[]> copyPageGroups(PdfSource document, IntFunction<List<List<Integer>>> planner, Executor executor) {
+        PdfReader reader = null;
+        try (Measurement measurement = Measurement.start("split")) {
+            log.debug("Splitting document. Document data length: {}", document.length());
+            reader = document.openPartialReader();
+            // a partial reader only reads the cross-reference table up front, the input size is the whole document
+            measurement.phase(PdfPhase.READ, reader.getNumberOfPages(), reader.getFileLength());
+            List<List<Integer>> groups = planner.apply(reader.getNumberOfPages());
+            log.debug("Number of pages: {}, number of outputs: {}", reader.getNumberOfPages(), groups.size());
+
+            List<byte[]> outputs = new ArrayList<>(groups.size());
+            if (executor == null) {
+                for (List<Integer> pages : groups) {
+                    outputs.add(copyPages(reader, pages));
+                }
+                stop(measurement, groups, outputs);
+                return outputs;
+            }
 
-            stamper.close();
             reader.close();
+            reader = null;
+            List<CompletableFuture<byte[]>> futures = new ArrayList<>(groups.size());
+            for (List<Integer> pages : groups) {
+                futures.add(CompletableFuture.supplyAsync(() -> copyPages(document, pages), executor));
+            }
+            for (CompletableFuture<byte[]> future : futures) {
+                outputs.add(Futures.join(future));
+            }
+            stop(measurement, groups, outputs);
+            return outputs;
+        } catch (IOException e) {
+            throw new RuntimeException("Could not read document.");
+        } finally {
+            if (reader != null) {
+                reader.close();
+            }
+        }
+    }
+
+    private static void stop(Measurement measurement, List<List<Integer>> groups, List<byte[]> outputs) {
+        if (measurement.isEnabled()) {
+            long bytes = outputs.stream().mapToLong(output -> output.length).sum();
+            int pages = groups.stream().mapToInt(List::size).sum();
+            measurement.phase(PdfPhase.WRITE, pages, bytes);
+            measurement.stop(pages, bytes);
+        }
+    }
+
+    private static byte[] copyPages(PdfSource document, List<Integer> pages) {
+        PdfReader reader = null;
+        try {
+            reader = document.openPartialReader();
+            return copyPages(reader, pages);
+        } catch (IOException e) {
+            throw new RuntimeException("Could not read document.");
+        } finally {
+            if (reader != null) {
+                reader.close();
+            }
+        }
+    }
+
+    /**
+     * Copies the given pages of a reader into a new document. Only the objects reachable from these pages are written.
+     *
+     * @param reader the reader of the source document
+     * @param pages  the pages to copy (1-based index)
+     * @return the new document
+     */
+
+    private static byte[] copyPages(PdfReader reader, List<Integer> pages) {
+        try {
+            Document output = new Document();
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            PdfCopy copy = OutputProfile.getDefault().newCopy(output, outputStream);
+            output.open();
+            for (int page : pages) {
+                copy.addPage(copy.getImportedPage(reader, page));
+            }
+            copy.freeReader(reader);
+            output.close();
 
-            log.debug("Pdf created from page: {}", pageNumber);
+            log.debug("Pdf created from pages: {}", pages);
             return outputStream.toByteArray();
         } catch (IOException | DocumentException e) {
             throw new RuntimeException("Could not read document.");
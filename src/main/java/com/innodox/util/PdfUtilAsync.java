@@ -0,0 +1,145 @@
+package com.innodox.util;
+
+import com.innodox.model.folding.FoldingLineSet;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * The operations of {@link PdfUtil} returning {@link CompletableFuture}s instead of blocking the caller. A document
+ * passed as byte array must not be modified until the future completes.
+ * <pre>
+ *   PdfUtilAsync pdfUtil = new PdfUtilAsync(executor, Duration.ofSeconds(30));
+ *   pdfUtil.getPage(document, 2).thenAccept(response::send);
+ * </pre>
+ *
+ * @see AsyncOperations
+ */
+public class PdfUtilAsync {
+
+    private final AsyncOperations operations;
+
+    /**
+     * Runs the operations on {@link AsyncOperations#defaultExecutor()} without a timeout.
+     */
+    public PdfUtilAsync() {
+        this(null, null);
+    }
+
+    /**
+     * @param executor the executor of the operations, null for {@link AsyncOperations#defaultExecutor()}
+     * @param timeout the timeout of every operation, null for no timeout
+     */
+    public PdfUtilAsync(Executor executor, Duration timeout) {
+        this(new AsyncOperations(executor, timeout));
+    }
+
+    public PdfUtilAsync(AsyncOperations operations) {
+        if (operations == null) throw new IllegalArgumentException("Operations are required");
+        this.operations = operations;
+    }
+
+    public AsyncOperations getOperations() {
+        return operations;
+    }
+
+    /**
+     * @param timeout the timeout of every operation, null for no timeout
+     * @return a facade on the same executor with another timeout
+     */
+    public PdfUtilAsync withTimeout(Duration timeout) {
+        return new PdfUtilAsync(operations.withTimeout(timeout));
+    }
+
+    /**
+     * @see PdfUtil#getPdfAttachments(byte[], String...)
+     */
+    public CompletableFuture<Map<String, byte[]>> getPdfAttachments(byte[] pdf, String... attachmentExtensions) {
+        return operations.supply(() -> PdfUtil.getPdfAttachments(pdf, attachmentExtensions));
+    }
+
+    /**
+     * @see PdfUtil#getPdfAttachments(Path, String...)
+     */
+    public CompletableFuture<Map<String, byte[]>> getPdfAttachments(Path pdf, String... attachmentExtensions) {
+        return operations.supply(() -> PdfUtil.getPdfAttachments(pdf, attachmentExtensions));
+    }
+
+    /**
+     * @see PdfUtil#getPageCount(byte[])
+     */
+    public CompletableFuture<Integer> getPageCount(byte[] document) {
+        return operations.supply(() -> PdfUtil.getPageCount(document));
+    }
+
+    /**
+     * @see PdfUtil#getPageCount(Path)
+     */
+    public CompletableFuture<Integer> getPageCount(Path document) {
+        return operations.supply(() -> PdfUtil.getPageCount(document));
+    }
+
+    /**
+     * @see PdfUtil#getPage(byte[], int)
+     */
+    public CompletableFuture<byte[]> getPage(byte[] document, int pageNumber) {
+        return operations.supply(() -> PdfUtil.getPage(document, pageNumber));
+    }
+
+    /**
+     * @see PdfUtil#getPage(Path, int)
+     */
+    public CompletableFuture<byte[]> getPage(Path document, int pageNumber) {
+        return operations.supply(() -> PdfUtil.getPage(document, pageNumber));
+    }
+
+    /**
+     * @see PdfUtil#getPages(byte[], List)
+     */
+    public CompletableFuture<List<byte[]>> getPages(byte[] document, List<String> pageRanges) {
+        return operations.supply(() -> PdfUtil.getPages(document, pageRanges));
+    }
+
+    /**
+     * @see PdfUtil#getPages(Path, List)
+     */
+    public CompletableFuture<List<byte[]>> getPages(Path document, List<String> pageRanges) {
+        return operations.supply(() -> PdfUtil.getPages(document, pageRanges));
+    }
+
+    /**
+     * @see PdfUtil#split(byte[], int)
+     */
+    public CompletableFuture<List<byte[]>> split(byte[] document, int chunkSize) {
+        return operations.supply(() -> PdfUtil.split(document, chunkSize));
+    }
+
+    /**
+     * @see PdfUtil#split(Path, int)
+     */
+    public CompletableFuture<List<byte[]>> split(Path document, int chunkSize) {
+        return operations.supply(() -> PdfUtil.split(document, chunkSize));
+    }
+
+    /**
+     * @see PdfUtil#addFoldingLines(byte[], FoldingLineSet)
+     */
+    public CompletableFuture<byte[]> addFoldingLines(byte[] document, FoldingLineSet foldingLines) {
+        return operations.supply(() -> PdfUtil.addFoldingLines(document, foldingLines));
+    }
+
+    /**
+     * @see PdfUtil#addFoldingLines(Path, FoldingLineSet)
+     */
+    public CompletableFuture<byte[]> addFoldingLines(Path document, FoldingLineSet foldingLines) {
+        return operations.supply(() -> PdfUtil.addFoldingLines(document, foldingLines));
+    }
+
+    public String toString() {
+        return "PdfUtilAsync(operations=" + this.operations + ")";
+    }
+}
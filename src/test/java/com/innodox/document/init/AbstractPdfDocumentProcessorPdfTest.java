@@ -0,0 +1,191 @@
+package com.innodox.document.init;
+
+import com.itextpdf.text.DocumentException;
+import com.itextpdf.text.Image;
+import com.itextpdf.text.pdf.PRStream;
+import com.itextpdf.text.pdf.PdfContentByte;
+import com.itextpdf.text.pdf.PdfDocument;
+import com.itextpdf.text.pdf.PdfName;
+import com.itextpdf.text.pdf.PdfObject;
+import com.itextpdf.text.pdf.PdfReader;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AbstractPdfDocumentProcessorPdfTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testEditableImageIsDecodedOnceUntilTheFileChanges() throws IOException, DocumentException {
+        Path logo = tempDir.resolve("logo.png");
+        ImageIO.write(new BufferedImage(20, 10, BufferedImage.TYPE_INT_RGB), "png", logo.toFile());
+        AbstractPdfDocumentProcessorPdf processor = new TestProcessor(logo.toString());
+
+        Image first = processor.getFileImage(true, logo.toString(), null);
+        Image second = processor.getFileImage(true, logo.toString(), null);
+
+        // Verify the results
+        assertNotSame(first, second);
+        assertEquals(first.getMySerialId(), second.getMySerialId());
+
+        ImageIO.write(new BufferedImage(40, 10, BufferedImage.TYPE_INT_RGB), "png", logo.toFile());
+        Files.setLastModifiedTime(logo, FileTime.fromMillis(Files.getLastModifiedTime(logo).toMillis() + 1000));
+        Image changed = processor.getFileImage(true, logo.toString(), null);
+
+        assertNotEquals(first.getMySerialId(), changed.getMySerialId());
+        assertEquals(40, changed.getWidth());
+    }
+
+    @Test
+    void testDefaultHeaderImageIsDecodedOncePerContent() throws IOException, DocumentException {
+        Path logo = tempDir.resolve("logo.png");
+        ImageIO.write(new BufferedImage(30, 10, BufferedImage.TYPE_INT_RGB), "png", logo.toFile());
+        AbstractPdfDocumentProcessorPdf processor = new StreamProcessor(logo.toString());
+
+        Image first = processor.getHeaderImage();
+        Image second = processor.getHeaderImage();
+
+        // Verify the results
+        assertNotSame(first, second);
+        assertEquals(first.getMySerialId(), second.getMySerialId());
+        assertEquals(first.getMySerialId(), processor.getFooterImage().getMySerialId());
+
+        ImageIO.write(new BufferedImage(50, 10, BufferedImage.TYPE_INT_RGB), "png", logo.toFile());
+        Image changed = processor.getHeaderImage();
+
+        assertNotEquals(first.getMySerialId(), changed.getMySerialId());
+        assertEquals(50, changed.getWidth());
+    }
+
+    @Test
+    void testHeaderAndFooterOnEveryPageShareOneImage() throws IOException {
+        Path logo = tempDir.resolve("logo.png");
+        ImageIO.write(new BufferedImage(20, 10, BufferedImage.TYPE_INT_RGB), "png", logo.toFile());
+        byte[] pdfBytes = Files.readAllBytes(Paths.get("src/test/resources/sample_with_attachments.pdf"));
+        AbstractPdfDocumentProcessorPdf processor = new TestProcessor(logo.toString()) {
+            @Override
+            protected String getHeaderPages() {
+                return "1-";
+            }
+        };
+
+        byte[] processed = processor.postProcess(pdfBytes);
+
+        // Verify the results
+        PdfReader reader = new PdfReader(processed);
+        assertEquals(3, reader.getNumberOfPages());
+        assertEquals(countImages(new PdfReader(pdfBytes)) + 1, countImages(reader));
+        for (int i = 1; i <= reader.getNumberOfPages(); i++) {
+            assertTrue(new String(reader.getPageContent(i), StandardCharsets.ISO_8859_1).contains(" Do"));
+        }
+    }
+
+    @Test
+    void testOverriddenDeprecatedHooksAreStillCalled() throws IOException {
+        Path logo = tempDir.resolve("logo.png");
+        ImageIO.write(new BufferedImage(20, 10, BufferedImage.TYPE_INT_RGB), "png", logo.toFile());
+        byte[] pdfBytes = Files.readAllBytes(Paths.get("src/test/resources/sample_with_attachments.pdf"));
+        AtomicInteger headers = new AtomicInteger();
+        AtomicInteger footers = new AtomicInteger();
+        AbstractPdfDocumentProcessorPdf processor = new StreamProcessor(logo.toString()) {
+            @Override
+            @SuppressWarnings("deprecation")
+            protected void buildHeader(PdfContentByte overContent, PdfDocument pdfDocument) throws IOException, DocumentException {
+                headers.incrementAndGet();
+                super.buildHeader(overContent, pdfDocument);
+            }
+
+            @Override
+            @SuppressWarnings("deprecation")
+            protected void buildFooter(PdfContentByte overContent, PdfDocument pdfDocument) {
+                footers.incrementAndGet();
+            }
+        };
+
+        byte[] processed = processor.postProcess(pdfBytes);
+
+        // Verify the results, the header is drawn through the default implementation, the footer is skipped
+        assertEquals(1, headers.get());
+        assertEquals(1, footers.get());
+        assertEquals(countImages(new PdfReader(pdfBytes)) + 1, countImages(new PdfReader(processed)));
+    }
+
+    private static int countImages(PdfReader reader) {
+        int images = 0;
+        for (int i = 1; i < reader.getXrefSize(); i++) {
+            PdfObject object = reader.getPdfObject(i);
+            if (object != null && object.isStream() && PdfName.IMAGE.equals(((PRStream) object).getAsName(PdfName.SUBTYPE))) {
+                images++;
+            }
+        }
+        return images;
+    }
+
+    @Test
+    void testMissingEditableImage() {
+        AbstractPdfDocumentProcessorPdf processor = new TestProcessor("missing.png");
+
+        // Verify the results
+        assertThrows(IllegalStateException.class,
+                () -> processor.getFileImage(true, tempDir.resolve("missing.png").toString(), null));
+    }
+
+    private static class StreamProcessor extends AbstractPdfDocumentProcessorPdf {
+        final String logo;
+
+        private StreamProcessor(String logo) {
+            this.logo = logo;
+        }
+
+        @Override
+        protected InputStream getHeaderStream() {
+            return getFileStream(true, logo, null);
+        }
+
+        @Override
+        protected InputStream getFooterStream() {
+            return getFileStream(true, logo, null);
+        }
+
+        @Override
+        protected boolean isHeaderEnabled() {
+            return true;
+        }
+
+        @Override
+        protected boolean isFooterEnabled() {
+            return true;
+        }
+    }
+
+    private static class TestProcessor extends StreamProcessor {
+
+        private TestProcessor(String logo) {
+            super(logo);
+        }
+
+        @Override
+        protected Image getHeaderImage() throws IOException, DocumentException {
+            return getFileImage(true, logo, null);
+        }
+
+        @Override
+        protected Image getFooterImage() throws IOException, DocumentException {
+            return getFileImage(true, logo, null);
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.innodox.document.init;
+
+import com.innodox.manipulate.PdfTransform;
+import com.innodox.manipulate.Watermark;
+import com.innodox.model.PdfAttachment;
+import com.innodox.model.folding.FoldingLineSet;
+import com.innodox.util.PdfUtil;
+import com.itextpdf.text.pdf.PdfReader;
+import com.itextpdf.text.pdf.parser.PdfTextExtractor;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PdfProcessorChainTest {
+
+    @Test
+    void testChainSharesOneStamperAndAdaptsPlainProcessors() throws IOException {
+        byte[] pdfBytes = Files.readAllBytes(Paths.get("src/test/resources/sample_with_attachments.pdf"));
+        byte[] xml = "<invoice/>".getBytes(StandardCharsets.UTF_8);
+        AtomicInteger plainCalls = new AtomicInteger();
+
+        PdfProcessorChain chain = PdfProcessorChain.builder()
+                .process(PdfUtil.foldingLineProcessor(FoldingLineSet.DL))
+                .process(PdfTransform.watermarkProcessor(Watermark.builder().text("DRAFT").build()))
+                .postProcess(pdf -> {
+                    plainCalls.incrementAndGet();
+                    return pdf;
+                })
+                .process(PdfTransform.attachmentProcessor(Collections.singletonList(
+                        PdfAttachment.builder().data(xml).filename("invoice.xml").description("invoice.xml").build())))
+                .build();
+
+        byte[] processed = chain.postProcess(pdfBytes);
+
+        // Verify the results
+        assertEquals(1, plainCalls.get());
+        PdfReader reader = new PdfReader(processed);
+        assertEquals(3, reader.getNumberOfPages());
+        for (int i = 1; i <= reader.getNumberOfPages(); i++) {
+            assertTrue(PdfTextExtractor.getTextFromPage(reader, i).contains("DRAFT"));
+        }
+        Map<String, byte[]> attachments = PdfUtil.getPdfAttachments(processed, "xml");
+        assertArrayEquals(xml, attachments.get("invoice.xml"));
+    }
+}
@@ -1,14 +1,51 @@
 package com.innodox.document.util;
 
+import com.innodox.exception.ResourceNotFoundException;
+import com.innodox.manipulate.PdfTransform;
+import com.innodox.metrics.HistogramInstrumentation;
+import com.innodox.metrics.Instrumentation;
+import com.innodox.model.PdfAttachment;
+import com.innodox.model.PdfAttachmentInfo;
+import com.innodox.model.folding.FoldingLine;
+import com.innodox.model.folding.FoldingLineSet;
+import com.innodox.util.IncrementalUpdate;
+import com.innodox.util.ParallelStamping;
+import com.innodox.util.PdfSource;
 import com.innodox.util.PdfUtil;
+import com.itextpdf.text.Document;
+import com.itextpdf.text.DocumentException;
+import com.itextpdf.text.Paragraph;
+import com.itextpdf.text.pdf.PRStream;
+import com.itextpdf.text.pdf.PdfDictionary;
+import com.itextpdf.text.pdf.PdfName;
+import com.itextpdf.text.pdf.PdfNumber;
+import com.itextpdf.text.pdf.PdfObject;
+import com.itextpdf.text.pdf.PdfReader;
+import com.itextpdf.text.pdf.PdfRectangle;
+import com.itextpdf.text.pdf.PdfStamper;
+import com.itextpdf.text.pdf.PdfWriter;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -27,6 +64,65 @@ public class PdfUtilTest {
         assertEquals(3,pageCount);
     }
 
+    @Test
+    void testPageCountFromPageTreeRoot() throws IOException {
+        Path sourceDir = Paths.get("src/test/resources/sample_with_attachments.pdf");
+        byte[] pdfBytes = Files.readAllBytes(Paths.get(sourceDir.toString()));
+
+        HistogramInstrumentation histograms = new HistogramInstrumentation();
+        Instrumentation.install(histograms);
+
+        try {
+            int pageCount = PdfUtil.getPageCount(pdfBytes);
+
+            // Verify the results
+            assertEquals(3, pageCount);
+            assertEquals(1, histograms.getEventCount("getPageCount", "fastPath"));
+            assertEquals(0, histograms.getEventCount("getPageCount", "fallback"));
+        } finally {
+            Instrumentation.uninstall();
+        }
+    }
+
+    @Test
+    void testPageCountFallsBackToFullReaderWithoutRootCount() throws Exception {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        Document document = new Document();
+        PdfWriter.getInstance(document, outputStream);
+        document.open();
+        for (int i = 0; i < 3; i++) {
+            document.newPage();
+            document.add(new Paragraph("page " + i));
+        }
+        document.close();
+        // rename the /Count of the page tree root, only a full parse of the page tree finds the pages
+        String content = new String(outputStream.toByteArray(), StandardCharsets.ISO_8859_1);
+        byte[] pdfBytes = content.replace("/Count 3", "/Xount 3").getBytes(StandardCharsets.ISO_8859_1);
+
+        HistogramInstrumentation histograms = new HistogramInstrumentation();
+        Instrumentation.install(histograms);
+
+        try {
+            int pageCount = PdfUtil.getPageCount(pdfBytes);
+
+            // Verify the results
+            assertEquals(3, pageCount);
+            assertEquals(0, histograms.getEventCount("getPageCount", "fastPath"));
+            assertEquals(1, histograms.getEventCount("getPageCount", "fallback"));
+        } finally {
+            Instrumentation.uninstall();
+        }
+    }
+
+    @Test
+    void testPageCountFromPath() {
+        Path sourceDir = Paths.get("src/test/resources/sample_with_attachments.pdf");
+
+        // Verify the results
+        assertEquals(3, PdfUtil.getPageCount(sourceDir));
+        assertTrue(PdfUtil.getPage(sourceDir, 2).length > 0);
+    }
+
     @Test
     void testPageGetNthPageContent() throws IOException {
         // Prepare a sample PDF file with attachments for testing
@@ -38,4 +134,405 @@ public class PdfUtilTest {
         // Verify the results
         assertTrue(pageContent.length > 0);
     }
+
+    @Test
+    void testPartiallyReadPageMatchesSourcePage() throws IOException {
+        Path sourceDir = Paths.get("src/test/resources/sample_with_attachments.pdf");
+        byte[] pdfBytes = Files.readAllBytes(Paths.get(sourceDir.toString()));
+        PdfReader source = new PdfReader(pdfBytes);
+
+        for (int pageNumber = 1; pageNumber <= source.getNumberOfPages(); pageNumber++) {
+            PdfReader page = new PdfReader(PdfUtil.getPage(pdfBytes, pageNumber, true));
+
+            // Verify the results
+            assertEquals(1, page.getNumberOfPages());
+            assertEquals(source.getPageSizeWithRotation(pageNumber).toString(), page.getPageSizeWithRotation(1).toString());
+            assertArrayEquals(source.getPageContent(pageNumber), page.getPageContent(1));
+            assertEquals(source.getPageResources(pageNumber).getKeys(), page.getPageResources(1).getKeys());
+        }
+    }
+
+    @Test
+    void testSplitIntoSinglePages() throws IOException {
+        Path sourceDir = Paths.get("src/test/resources/sample_with_attachments.pdf");
+        byte[] pdfBytes = Files.readAllBytes(Paths.get(sourceDir.toString()));
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+
+        try {
+            List<byte[]> pages = PdfUtil.split(PdfSource.of(pdfBytes), 1, executor);
+            List<byte[]> ranges = PdfUtil.getPages(pdfBytes, Arrays.asList("1-2", "3"));
+
+            // Verify the results
+            assertEquals(3, pages.size());
+            pages.forEach(page -> assertEquals(1, PdfUtil.getPageCount(page)));
+            assertEquals(2, PdfUtil.getPageCount(ranges.get(0)));
+            assertEquals(1, PdfUtil.getPageCount(ranges.get(1)));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void testAddFoldingLinesInParallelPageRanges() throws Exception {
+        byte[] pdfBytes = plainDocument(5, "Ranges");
+        List<FoldingLine> foldingLines = Collections.singletonList(
+                FoldingLine.builder().startX(0).startY(280).endX(20).endY(280).build());
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        HistogramInstrumentation histograms = new HistogramInstrumentation();
+        Instrumentation.install(histograms);
+
+        try {
+            ParallelStamping parallelStamping = ParallelStamping.builder()
+                    .executor(executor)
+                    .threshold(2)
+                    .rangeSize(2)
+                    .maxRangesInFlight(2)
+                    .build();
+            byte[] withLines = PdfUtil.addFoldingLines(pdfBytes, foldingLines, parallelStamping);
+
+            // Verify the results, the ranges were stitched and the probe does not count as a page count request
+            PdfReader reader = new PdfReader(withLines);
+            assertEquals(0, histograms.getEventCount("getPageCount", "fastPath"));
+            assertEquals(5, reader.getNumberOfPages());
+            for (int i = 1; i <= 5; i++) {
+                assertTrue(formContent(reader, i).contains("280 m"));
+            }
+            assertEquals("Ranges", reader.getInfo().get("Title"));
+        } finally {
+            Instrumentation.uninstall();
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void testParallelStampingKeepsOutlinesThroughSequentialPath() throws IOException {
+        Path sourceDir = Paths.get("src/test/resources/sample_with_attachments.pdf");
+        byte[] pdfBytes = Files.readAllBytes(Paths.get(sourceDir.toString()));
+        List<FoldingLine> foldingLines = Collections.singletonList(
+                FoldingLine.builder().startX(0).startY(280).endX(20).endY(280).build());
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+
+        try {
+            ParallelStamping parallelStamping = ParallelStamping.builder()
+                    .executor(executor)
+                    .threshold(2)
+                    .rangeSize(2)
+                    .build();
+            byte[] withLines = PdfUtil.addFoldingLines(pdfBytes, foldingLines, parallelStamping);
+
+            // Verify the results
+            assertEquals(-1, parallelStamping.applicablePageCount(PdfSource.of(pdfBytes)));
+            PdfReader reader = new PdfReader(withLines);
+            assertNotNull(reader.getCatalog().get(PdfName.OUTLINES));
+            assertTrue(formContent(reader, 3).contains("280 m"));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void testEqualFoldingLineListsShareOneCompiledSet() {
+        List<FoldingLine> foldingLines = Collections.singletonList(
+                FoldingLine.builder().startX(0).startY(280).endX(20).endY(280).build());
+        List<FoldingLine> equalLines = Collections.singletonList(
+                FoldingLine.builder().startX(0).startY(280).endX(20).endY(280).build());
+
+        // Verify the results
+        assertSame(FoldingLineSet.of(foldingLines), FoldingLineSet.of(equalLines));
+        assertNotSame(FoldingLineSet.of(foldingLines), FoldingLineSet.of(Collections.emptyList()));
+        assertSame(foldingLines.get(0).getStart(), foldingLines.get(0).getStart());
+    }
+
+    @Test
+    void testAddRelativeFoldingLinesPerPageSize() throws IOException {
+        Path sourceDir = Paths.get("src/test/resources/sample_with_attachments.pdf");
+        byte[] pdfBytes = Files.readAllBytes(Paths.get(sourceDir.toString()));
+
+        byte[] withLines = PdfUtil.addFoldingLines(pdfBytes, FoldingLineSet.DL);
+
+        // Verify the results
+        PdfReader reader = new PdfReader(withLines);
+        assertEquals(3, reader.getNumberOfPages());
+        // the third page is 72 points high, its folds are at one and two thirds of the height
+        String lines = formContent(reader, 3);
+        assertTrue(lines.contains("0 48 m"));
+        assertTrue(lines.contains("0 24 m"));
+    }
+
+    @Test
+    void testAddRelativeFoldingLinesOnRotatedPage() throws Exception {
+        byte[] plain = plainDocument(1, "Rotated");
+        PdfReader source = new PdfReader(plain);
+        source.getPageN(1).put(PdfName.MEDIABOX, new PdfRectangle(200, 300));
+        source.getPageN(1).put(PdfName.ROTATE, new PdfNumber(90));
+        ByteArrayOutputStream rotated = new ByteArrayOutputStream();
+        new PdfStamper(source, rotated).close();
+
+        byte[] withLines = PdfUtil.addFoldingLines(rotated.toByteArray(), FoldingLineSet.C5);
+
+        // Verify the results, the displayed page is 300 wide and 200 high and is folded at half of its height
+        PdfReader reader = new PdfReader(withLines);
+        String lines = formContent(reader, 1);
+        assertTrue(lines.contains("0 100 m"));
+        assertTrue(lines.contains("10.5 100 l"));
+    }
+
+    private static byte[] plainDocument(int pages, String title) throws DocumentException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        Document document = new Document();
+        PdfWriter.getInstance(document, outputStream);
+        document.addTitle(title);
+        document.open();
+        for (int i = 0; i < pages; i++) {
+            document.newPage();
+            document.add(new Paragraph("page " + i));
+        }
+        document.close();
+        return outputStream.toByteArray();
+    }
+
+    private static String formContent(PdfReader reader, int page) throws IOException {
+        StringBuilder content = new StringBuilder();
+        PdfDictionary xObjects = reader.getPageResources(page).getAsDict(PdfName.XOBJECT);
+        for (PdfName name : xObjects.getKeys()) {
+            PRStream form = (PRStream) xObjects.getAsStream(name);
+            if (PdfName.FORM.equals(form.getAsName(PdfName.SUBTYPE))) {
+                content.append(new String(PdfReader.getStreamBytes(form), StandardCharsets.ISO_8859_1));
+            }
+        }
+        return content.toString();
+    }
+
+    @Test
+    void testGetPdfAttachmentsFromPathSkipsOtherExtensions() throws Exception {
+        Path sourceDir = Paths.get("src/test/resources/sample_with_attachments.pdf");
+        byte[] pdfBytes = Files.readAllBytes(Paths.get(sourceDir.toString()));
+        byte[] xml = "<invoice/>".getBytes(StandardCharsets.UTF_8);
+        // the name tree is sorted, so the text file comes first
+        byte[] withAttachments = PdfTransform.get(pdfBytes).addAttachments(pdfBytes, Arrays.asList(
+                PdfAttachment.builder().data("terms".getBytes(StandardCharsets.UTF_8)).filename("a.txt").description("a.txt").build(),
+                PdfAttachment.builder().data(xml).filename("invoice.xml").description("invoice.xml").build()));
+        Path withAttachmentsFile = Files.write(Files.createTempFile("attachments", ".pdf"), withAttachments);
+        Path plainFile = Files.write(Files.createTempFile("plain", ".pdf"), plainDocument(1, "Plain"));
+
+        try {
+            Map<String, byte[]> attachments = PdfUtil.getPdfAttachments(withAttachmentsFile, "xml");
+
+            // Verify the results
+            assertEquals(Collections.singleton("invoice.xml"), attachments.keySet());
+            assertArrayEquals(xml, attachments.get("invoice.xml"));
+            assertEquals(2, PdfUtil.getPdfAttachments(withAttachmentsFile).size());
+            assertTrue(PdfUtil.getPdfAttachments(plainFile).isEmpty());
+            assertThrows(ResourceNotFoundException.class, () -> PdfUtil.getPage(plainFile, 2));
+        } finally {
+            Files.delete(withAttachmentsFile);
+            Files.delete(plainFile);
+        }
+    }
+
+    @Test
+    void testConcurrentReadersOfPathSource() throws Exception {
+        Path sourceDir = Paths.get("src/test/resources/sample_with_attachments.pdf");
+        byte[] pdfBytes = Files.readAllBytes(Paths.get(sourceDir.toString()));
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+
+        try {
+            List<byte[]> fromPath = PdfUtil.getPages(PdfSource.of(sourceDir), Arrays.asList("1", "2", "3", "1-3"), executor);
+            List<byte[]> fromBytes = PdfUtil.getPages(pdfBytes, Arrays.asList("1", "2", "3", "1-3"));
+
+            // Verify the results
+            assertEquals(fromBytes.size(), fromPath.size());
+            for (int i = 0; i < fromBytes.size(); i++) {
+                assertEquals(PdfUtil.getPageCount(fromBytes.get(i)), PdfUtil.getPageCount(fromPath.get(i)));
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void testStreamPdfAttachments() throws Exception {
+        Path sourceDir = Paths.get("src/test/resources/sample_with_attachments.pdf");
+        byte[] pdfBytes = Files.readAllBytes(Paths.get(sourceDir.toString()));
+        byte[] xml = "<invoice/>".getBytes(StandardCharsets.UTF_8);
+        byte[] txt = "terms".getBytes(StandardCharsets.UTF_8);
+        byte[] withAttachments = PdfTransform.get(pdfBytes).addAttachments(pdfBytes, Arrays.asList(
+                PdfAttachment.builder().data(xml).filename("invoice.xml").description("invoice.xml").build(),
+                PdfAttachment.builder().data(txt).filename("terms.txt").description("terms.txt").build()));
+
+        Map<String, byte[]> streamed = new HashMap<>();
+        int count = PdfUtil.streamPdfAttachments(withAttachments,
+                (name, data) -> streamed.put(name, IOUtils.toByteArray(data)), "xml");
+
+        // Verify the results
+        assertEquals(1, count);
+        assertArrayEquals(xml, streamed.get("invoice.xml"));
+    }
+
+    @Test
+    void testExtractPdfAttachmentsFromNameTreeWithKids() throws Exception {
+        Path sourceDir = Paths.get("src/test/resources/sample_with_attachments.pdf");
+        byte[] pdfBytes = Files.readAllBytes(Paths.get(sourceDir.toString()));
+        List<PdfAttachment> attachments = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            String name = String.format("file-%03d.txt", i);
+            attachments.add(PdfAttachment.builder().data(name.getBytes(StandardCharsets.UTF_8)).filename(name).description(name).build());
+        }
+        // more than 64 entries are written as a name tree with /Kids
+        byte[] withAttachments = PdfTransform.get(pdfBytes).addAttachments(pdfBytes, attachments);
+        Path targetDirectory = Files.createTempDirectory("attachments");
+
+        try {
+            int count = PdfUtil.extractPdfAttachments(withAttachments, targetDirectory, "txt");
+
+            // Verify the results
+            assertEquals(100, count);
+            assertArrayEquals("file-099.txt".getBytes(StandardCharsets.UTF_8),
+                    Files.readAllBytes(targetDirectory.resolve("file-099.txt")));
+        } finally {
+            FileUtils.deleteDirectory(targetDirectory.toFile());
+        }
+    }
+
+    @Test
+    void testExtractPdfAttachmentsKeepsFilesInsideTargetDirectory() throws Exception {
+        Path sourceDir = Paths.get("src/test/resources/sample_with_attachments.pdf");
+        byte[] pdfBytes = Files.readAllBytes(Paths.get(sourceDir.toString()));
+        List<PdfAttachment> attachments = new ArrayList<>();
+        for (String name : Arrays.asList("a/report.txt", "b/report.txt", "..", "../")) {
+            attachments.add(PdfAttachment.builder().data(name.getBytes(StandardCharsets.UTF_8)).filename(name).description(name).build());
+        }
+        byte[] withAttachments = PdfTransform.get(pdfBytes).addAttachments(pdfBytes, attachments);
+        Path parentDirectory = Files.createTempDirectory("attachments");
+        Path targetDirectory = parentDirectory.resolve("target");
+
+        try {
+            int count = PdfUtil.extractPdfAttachments(withAttachments, targetDirectory);
+
+            // Verify the results
+            assertEquals(4, count);
+            assertEquals(Collections.singletonList(targetDirectory), listFiles(parentDirectory));
+            List<Path> files = listFiles(targetDirectory);
+            assertEquals(4, files.size());
+            List<String> contents = new ArrayList<>();
+            for (Path file : files) {
+                contents.add(new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+            }
+            assertTrue(contents.containsAll(Arrays.asList("a/report.txt", "b/report.txt", "..", "../")));
+            assertTrue(files.contains(targetDirectory.resolve("report.txt")));
+            assertTrue(files.contains(targetDirectory.resolve("report (1).txt")));
+        } finally {
+            FileUtils.deleteDirectory(parentDirectory.toFile());
+        }
+    }
+
+    private static List<Path> listFiles(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.collect(Collectors.toList());
+        }
+    }
+
+    @Test
+    void testListPdfAttachmentsReadsContentOnRequest() throws Exception {
+        Path sourceDir = Paths.get("src/test/resources/sample_with_attachments.pdf");
+        byte[] pdfBytes = Files.readAllBytes(Paths.get(sourceDir.toString()));
+        byte[] xml = "<invoice/>".getBytes(StandardCharsets.UTF_8);
+        byte[] withAttachments = PdfTransform.get(pdfBytes).addAttachments(pdfBytes, Arrays.asList(
+                PdfAttachment.builder().data("terms".getBytes(StandardCharsets.UTF_8)).filename("terms.txt").description("terms.txt").build(),
+                PdfAttachment.builder().data(xml).filename("invoice.xml").description("invoice.xml").build()));
+
+        List<PdfAttachmentInfo> all = PdfUtil.listPdfAttachments(withAttachments);
+        List<PdfAttachmentInfo> xmlOnly = PdfUtil.listPdfAttachments(withAttachments, "xml");
+
+        // Verify the results
+        assertEquals(2, all.size());
+        assertEquals(1, xmlOnly.size());
+        PdfAttachmentInfo invoice = xmlOnly.get(0);
+        assertEquals("invoice.xml", invoice.getName());
+        assertEquals(xml.length, invoice.getSize());
+        assertNotNull(invoice.getModificationDate());
+        assertArrayEquals(xml, invoice.getData());
+        assertSame(invoice.getData(), invoice.getData());
+    }
+
+    @Test
+    void testGetPdfAttachmentFromNameTreeWithKids() throws Exception {
+        Path sourceDir = Paths.get("src/test/resources/sample_with_attachments.pdf");
+        byte[] pdfBytes = Files.readAllBytes(Paths.get(sourceDir.toString()));
+        List<PdfAttachment> attachments = new ArrayList<>();
+        for (int i = 0; i < 150; i++) {
+            String name = String.format("file-%03d.txt", i);
+            attachments.add(PdfAttachment.builder().data(name.getBytes(StandardCharsets.UTF_8)).filename(name).description(name).build());
+        }
+        // more than 64 entries are written as a name tree with /Kids
+        byte[] withAttachments = PdfTransform.get(pdfBytes).addAttachments(pdfBytes, attachments);
+
+        // Verify the results
+        assertNotNull(new PdfReader(withAttachments).getCatalog().getAsDict(PdfName.NAMES)
+                .getAsDict(PdfName.EMBEDDEDFILES).getAsArray(PdfName.KIDS));
+        assertArrayEquals("file-000.txt".getBytes(StandardCharsets.UTF_8), PdfUtil.getPdfAttachment(withAttachments, "file-000.txt"));
+        assertArrayEquals("file-120.txt".getBytes(StandardCharsets.UTF_8), PdfUtil.getPdfAttachment(withAttachments, "file-120.txt"));
+        assertArrayEquals("file-149.txt".getBytes(StandardCharsets.UTF_8), PdfUtil.getPdfAttachment(withAttachments, "file-149.txt"));
+        assertNull(PdfUtil.getPdfAttachment(withAttachments, "file-150.txt"));
+        assertNull(PdfUtil.getPdfAttachment(pdfBytes, "file-000.txt"));
+        assertEquals(150, PdfUtil.listPdfAttachments(withAttachments).size());
+    }
+
+    @Test
+    void testIdenticalAttachmentsShareOneEmbeddedStream() throws Exception {
+        Path sourceDir = Paths.get("src/test/resources/sample_with_attachments.pdf");
+        byte[] pdfBytes = Files.readAllBytes(Paths.get(sourceDir.toString()));
+        byte[] terms = new byte[100_000];
+        Arrays.fill(terms, (byte) 'x');
+        Path termsFile = Files.write(Files.createTempFile("terms", ".txt"), terms);
+        try {
+            byte[] withAttachments = PdfTransform.get(pdfBytes).withParallelism(3).addAttachments(pdfBytes, Arrays.asList(
+                    PdfAttachment.builder().data(terms).filename("a.txt").description("a.txt").build(),
+                    PdfAttachment.builder().file(termsFile).filename("b.txt").description("b.txt").build(),
+                    PdfAttachment.builder().inputStream(new ByteArrayInputStream(terms)).filename("c.txt").description("c.txt").build()));
+
+            // Verify the results
+            List<PdfAttachmentInfo> attachments = PdfUtil.listPdfAttachments(withAttachments);
+            assertEquals(3, attachments.size());
+            for (PdfAttachmentInfo attachment : attachments) {
+                assertEquals(terms.length, attachment.getSize());
+                assertArrayEquals(terms, attachment.getData());
+            }
+            PdfReader reader = new PdfReader(withAttachments);
+            int embeddedFiles = 0;
+            for (int i = 1; i < reader.getXrefSize(); i++) {
+                PdfObject object = reader.getPdfObject(i);
+                if (object != null && object.isStream() && PdfName.EMBEDDEDFILE.equals(((PRStream) object).getAsName(PdfName.TYPE))) {
+                    embeddedFiles++;
+                }
+            }
+            assertEquals(1, embeddedFiles);
+        } finally {
+            Files.delete(termsFile);
+        }
+    }
+
+    @Test
+    void testIncrementalUpdateKeepsOriginalBytes() throws Exception {
+        Path sourceDir = Paths.get("src/test/resources/sample_with_attachments.pdf");
+        byte[] pdfBytes = Files.readAllBytes(Paths.get(sourceDir.toString()));
+
+        byte[] updated = IncrementalUpdate.apply(pdfBytes, PdfUtil.foldingLineProcessor(FoldingLineSet.DL));
+        ByteArrayOutputStream tail = new ByteArrayOutputStream();
+        long appended = IncrementalUpdate.appendTail(PdfSource.of(pdfBytes), tail, PdfUtil.foldingLineProcessor(FoldingLineSet.DL));
+
+        // Verify the results
+        assertArrayEquals(pdfBytes, Arrays.copyOf(updated, pdfBytes.length));
+        assertTrue(updated.length > pdfBytes.length);
+        // the update contains timestamps, so only the size of the same tail is compared
+        assertEquals(appended, tail.size());
+        assertEquals(3, PdfUtil.getPageCount(updated));
+        assertEquals(3, PdfUtil.getPageCount(concat(pdfBytes, tail.toByteArray())));
+    }
+
+    private static byte[] concat(byte[] first, byte[] second) {
+        byte[] result = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, result, first.length, second.length);
+        return result;
+    }
 }
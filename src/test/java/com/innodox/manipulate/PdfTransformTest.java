@@ -0,0 +1,277 @@
+package com.innodox.manipulate;
+
+import com.innodox.exception.InvalidFileContentException;
+import com.innodox.metrics.HistogramInstrumentation;
+import com.innodox.metrics.Instrumentation;
+import com.innodox.model.PdfAttachment;
+import com.innodox.model.PdfResult;
+import com.innodox.util.OutputProfile;
+import com.innodox.util.PdfSource;
+import com.innodox.util.PdfUtil;
+import com.itextpdf.text.pdf.PRStream;
+import com.itextpdf.text.pdf.PdfDictionary;
+import com.itextpdf.text.pdf.PdfIndirectReference;
+import com.itextpdf.text.pdf.PdfName;
+import com.itextpdf.text.pdf.PdfObject;
+import com.itextpdf.text.pdf.PdfReader;
+import com.itextpdf.text.pdf.parser.PdfTextExtractor;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class PdfTransformTest {
+
+    @Test
+    void testMergeWithParallelParsing() throws IOException {
+        // Prepare a sample PDF file for testing
+        Path sourceDir = Paths.get("src/test/resources/sample_with_attachments.pdf");
+        byte[] pdfBytes = Files.readAllBytes(Paths.get(sourceDir.toString()));
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+
+        try {
+            byte[] merged = PdfTransform.get(pdfBytes)
+                    .addAll(Arrays.asList(pdfBytes, pdfBytes))
+                    .withExecutor(executor)
+                    .merge();
+
+            // Verify the results
+            assertEquals(9, PdfUtil.getPageCount(merged));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void testAddAllSkipsNullDocuments() throws IOException {
+        Path sourceDir = Paths.get("src/test/resources/sample_with_attachments.pdf");
+        byte[] pdfBytes = Files.readAllBytes(Paths.get(sourceDir.toString()));
+
+        byte[] merged = PdfTransform.get(pdfBytes)
+                .addAll(Arrays.asList(pdfBytes, null, pdfBytes))
+                .merge();
+
+        // Verify the results
+        assertEquals(9, PdfUtil.getPageCount(merged));
+    }
+
+    @Test
+    void testMergeParsesOnlyPrefetchedDocumentsAhead() throws IOException {
+        Path sourceDir = Paths.get("src/test/resources/sample_with_attachments.pdf");
+        byte[] pdfBytes = Files.readAllBytes(Paths.get(sourceDir.toString()));
+        byte[] broken = "not a pdf".getBytes(StandardCharsets.US_ASCII);
+        AtomicInteger parsed = new AtomicInteger();
+        Executor executor = task -> {
+            parsed.incrementAndGet();
+            task.run();
+        };
+
+        PdfTransform.PdfTransformBuilder builder = PdfTransform.get(pdfBytes)
+                .addAll(Arrays.asList(broken, pdfBytes, pdfBytes, pdfBytes))
+                .withExecutor(executor);
+
+        // Verify the results, the first document and one ahead were parsed when the broken one failed
+        assertThrows(InvalidFileContentException.class, builder::merge);
+        assertEquals(3, parsed.get());
+    }
+
+    @Test
+    void testDefaultProfileWritesTheClassicOutput() throws Exception {
+        Path sourceDir = Paths.get("src/test/resources/sample_with_attachments.pdf");
+        byte[] pdfBytes = Files.readAllBytes(Paths.get(sourceDir.toString()));
+        byte[] terms = new byte[10_000];
+        Arrays.fill(terms, (byte) 'x');
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        try (DeflaterOutputStream deflater = new DeflaterOutputStream(expected, new Deflater(Deflater.BEST_COMPRESSION))) {
+            deflater.write(terms);
+        }
+
+        byte[] merged = PdfTransform.get(pdfBytes).add(pdfBytes).merge();
+        byte[] withAttachment = PdfTransform.get(pdfBytes).addAttachments(pdfBytes, Collections.singletonList(
+                PdfAttachment.builder().data(terms).filename("terms.txt").description("terms.txt").build()));
+
+        // Verify the results, embedded files are compressed like PdfFileSpecification.fileEmbedded does
+        assertEquals(OutputProfile.STANDARD, OutputProfile.getDefault());
+        assertFalse(new PdfReader(merged).isNewXrefType());
+        PdfReader reader = new PdfReader(withAttachment);
+        assertFalse(reader.isNewXrefType());
+        PRStream embeddedFile = null;
+        for (int i = 1; i < reader.getXrefSize(); i++) {
+            PdfObject object = reader.getPdfObject(i);
+            if (object != null && object.isStream() && PdfName.EMBEDDEDFILE.equals(((PRStream) object).getAsName(PdfName.TYPE))) {
+                embeddedFile = (PRStream) object;
+            }
+        }
+        assertNotNull(embeddedFile);
+        assertArrayEquals(expected.toByteArray(), PdfReader.getStreamBytesRaw(embeddedFile));
+    }
+
+    @Test
+    void testSmallestProfileDeduplicatesMergedDocuments() throws IOException {
+        Path sourceDir = Paths.get("src/test/resources/sample_with_attachments.pdf");
+        byte[] pdfBytes = Files.readAllBytes(Paths.get(sourceDir.toString()));
+
+        byte[] fast = PdfTransform.get(pdfBytes).add(pdfBytes).withOutputProfile(OutputProfile.FAST).merge();
+        byte[] smallest = PdfTransform.get(pdfBytes).add(pdfBytes).withOutputProfile(OutputProfile.SMALLEST).merge();
+
+        // Verify the results
+        assertEquals(6, PdfUtil.getPageCount(smallest));
+        assertTrue(smallest.length < fast.length);
+        assertFalse(new PdfReader(fast).isNewXrefType());
+        assertTrue(new PdfReader(smallest).isNewXrefType());
+    }
+
+    @Test
+    void testWatermarkInAppendModeKeepsOriginalBytes() throws IOException {
+        Path sourceDir = Paths.get("src/test/resources/sample_with_attachments.pdf");
+        byte[] pdfBytes = Files.readAllBytes(Paths.get(sourceDir.toString()));
+
+        byte[] marked = PdfTransform.get(pdfBytes).withAppendMode(true).watermark();
+
+        // Verify the results
+        assertTrue(marked.length > pdfBytes.length);
+        assertArrayEquals(pdfBytes, Arrays.copyOf(marked, pdfBytes.length));
+        assertTrue(PdfTextExtractor.getTextFromPage(new PdfReader(marked), 1).contains("PISZKOZAT"));
+    }
+
+    @Test
+    void testStreamingMergeIntoFile(@TempDir Path tempDir) {
+        Path sourceDir = Paths.get("src/test/resources/sample_with_attachments.pdf");
+        Path target = tempDir.resolve("merged.pdf");
+
+        int merged = PdfTransform.merge(
+                Arrays.asList(PdfSource.of(sourceDir), PdfSource.of(sourceDir)).iterator(), target);
+
+        // Verify the results
+        assertEquals(2, merged);
+        assertEquals(6, PdfUtil.getPageCount(target));
+    }
+
+    @Test
+    void testMergeAndWatermarkMatchesTwoPasses() throws IOException {
+        Path sourceDir = Paths.get("src/test/resources/sample_with_attachments.pdf");
+        byte[] pdfBytes = Files.readAllBytes(Paths.get(sourceDir.toString()));
+
+        byte[] singlePass = PdfTransform.get(pdfBytes).add(pdfBytes).mergeAndWatermark();
+        byte[] twoPasses = PdfTransform.get(PdfTransform.get(pdfBytes).add(pdfBytes).merge()).watermark();
+
+        // Verify the results
+        PdfReader singlePassReader = new PdfReader(singlePass);
+        PdfReader twoPassesReader = new PdfReader(twoPasses);
+        assertEquals(twoPassesReader.getNumberOfPages(), singlePassReader.getNumberOfPages());
+        for (int i = 1; i <= singlePassReader.getNumberOfPages(); i++) {
+            String text = PdfTextExtractor.getTextFromPage(singlePassReader, i);
+            assertTrue(text.contains("PISZKOZAT"));
+            assertEquals(PdfTextExtractor.getTextFromPage(twoPassesReader, i), text);
+        }
+    }
+
+    @Test
+    void testWatermarkIsSharedFormXObject() throws IOException {
+        Path sourceDir = Paths.get("src/test/resources/sample_with_attachments.pdf");
+        byte[] pdfBytes = Files.readAllBytes(Paths.get(sourceDir.toString()));
+        Watermark watermark = Watermark.builder().text("DRAFT").angle(30).opacity(0.5f).build();
+
+        byte[] merged = PdfTransform.get(pdfBytes).add(pdfBytes).merge();
+
+        byte[] marked = PdfTransform.get(merged).withWatermark(watermark).watermark();
+
+        // Verify the results
+        PdfReader reader = new PdfReader(marked);
+        Set<Integer> watermarkForms = new HashSet<>();
+        for (int i = 1; i <= reader.getNumberOfPages(); i++) {
+            assertTrue(PdfTextExtractor.getTextFromPage(reader, i).contains("DRAFT"));
+            PdfDictionary xObjects = reader.getPageResources(i).getAsDict(PdfName.XOBJECT);
+            for (PdfName name : xObjects.getKeys()) {
+                PdfIndirectReference reference = xObjects.getAsIndirectObject(name);
+                PRStream form = (PRStream) xObjects.getAsStream(name);
+                if (PdfName.FORM.equals(form.getAsName(PdfName.SUBTYPE))
+                        && new String(PdfReader.getStreamBytes(form), StandardCharsets.ISO_8859_1).contains("DRAFT")) {
+                    watermarkForms.add(reference.getNumber());
+                }
+            }
+        }
+        // one form per distinct page size, shared by both copies of each page
+        assertEquals(6, reader.getNumberOfPages());
+        assertEquals(3, watermarkForms.size());
+    }
+
+    @Test
+    void testParallelWatermarkAllReportsFailuresPerDocument() throws IOException {
+        Path sourceDir = Paths.get("src/test/resources/sample_with_attachments.pdf");
+        byte[] pdfBytes = Files.readAllBytes(Paths.get(sourceDir.toString()));
+        byte[] broken = "not a pdf".getBytes(StandardCharsets.UTF_8);
+
+        List<PdfResult> results = PdfTransform.get(pdfBytes)
+                .addAll(Arrays.asList(broken, pdfBytes))
+                .withParallelism(2)
+                .withMaxInFlightBytes(pdfBytes.length)
+                .tryWatermarkAll();
+
+        // Verify the results
+        assertEquals(3, results.size());
+        assertTrue(results.get(0).isSuccess());
+        assertFalse(results.get(1).isSuccess());
+        assertTrue(results.get(2).isSuccess());
+        assertEquals(3, PdfUtil.getPageCount(results.get(2).getData()));
+    }
+
+    @Test
+    void testBarcodeImagesFromAllPagesInParallel() throws IOException {
+        Path sourceDir = Paths.get("src/test/resources/sample_with_attachments.pdf");
+        byte[] pdfBytes = Files.readAllBytes(Paths.get(sourceDir.toString()));
+
+        List<byte[]> sequential = PdfTransform.get(pdfBytes).getBarcodeFromPdf();
+        List<byte[]> parallel = PdfTransform.get(pdfBytes).withParallelism(3).getBarcodeFromPdf();
+        List<byte[]> firstPage = PdfTransform.get(pdfBytes).getBarcodeFromPdf("1");
+
+        // Verify the results
+        assertFalse(sequential.isEmpty());
+        assertEquals(sequential.size(), parallel.size());
+        for (int i = 0; i < sequential.size(); i++) {
+            assertArrayEquals(sequential.get(i), parallel.get(i));
+            // JPEG images are returned as stored, starting with the SOI marker
+            assertEquals((byte) 0xFF, sequential.get(i)[0]);
+            assertEquals((byte) 0xD8, sequential.get(i)[1]);
+        }
+        assertTrue(firstPage.size() <= sequential.size());
+    }
+
+    @Test
+    void testBarcodeImagesAreNotReportedAsPageCount() throws IOException {
+        Path sourceDir = Paths.get("src/test/resources/sample_with_attachments.pdf");
+        byte[] pdfBytes = Files.readAllBytes(Paths.get(sourceDir.toString()));
+        HistogramInstrumentation histograms = new HistogramInstrumentation();
+        Instrumentation.install(histograms);
+
+        try {
+            PdfTransform.get(pdfBytes).withParallelism(2).getBarcodeFromPdf();
+
+            // Verify the results
+            assertEquals(0, histograms.getOperation("getPageCount").getCount());
+            assertEquals(1, histograms.getOperation("getBarcodeFromPdf").getCount());
+            assertEquals(pdfBytes.length, histograms.getOperation("getBarcodeFromPdf").getBytesIn());
+        } finally {
+            Instrumentation.uninstall();
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.innodox.metrics;
+
+import com.innodox.manipulate.PdfTransform;
+import com.innodox.model.folding.FoldingLineSet;
+import com.innodox.util.ParallelStamping;
+import com.innodox.util.PdfSource;
+import com.innodox.util.PdfUtil;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HistogramInstrumentationTest {
+
+    @AfterEach
+    void uninstall() {
+        Instrumentation.uninstall();
+    }
+
+    @Test
+    void testOperationsAndPhasesAreRecorded() throws IOException {
+        byte[] pdfBytes = Files.readAllBytes(Paths.get("src/test/resources/sample_with_attachments.pdf"));
+        HistogramInstrumentation histograms = new HistogramInstrumentation();
+        Instrumentation.install(histograms);
+
+        byte[] withLines = PdfUtil.addFoldingLines(pdfBytes, FoldingLineSet.DL);
+        byte[] merged = PdfTransform.get(pdfBytes).add(pdfBytes).merge();
+
+        // Verify the results
+        LatencyHistogram folding = histograms.getOperation("addFoldingLines");
+        assertEquals(1, folding.getCount());
+        assertEquals(3, folding.getPages());
+        assertEquals(pdfBytes.length, folding.getBytesIn());
+        assertEquals(withLines.length, folding.getBytesOut());
+        assertTrue(folding.getPercentileNanos(50) > 0);
+        for (PdfPhase phase : PdfPhase.values()) {
+            assertEquals(1, histograms.getPhase("addFoldingLines", phase).getCount());
+        }
+
+        LatencyHistogram merge = histograms.getOperation("merge");
+        assertEquals(6, merge.getPages());
+        assertEquals(2L * pdfBytes.length, merge.getBytesIn());
+        assertEquals(merged.length, merge.getBytesOut());
+        assertEquals(2, histograms.getPhase("merge", PdfPhase.READ).getCount());
+    }
+
+    @Test
+    void testFailedOperationsAreRecorded() throws IOException {
+        byte[] pdfBytes = Files.readAllBytes(Paths.get("src/test/resources/sample_with_attachments.pdf"));
+        HistogramInstrumentation histograms = new HistogramInstrumentation();
+        Instrumentation.install(histograms);
+
+        assertThrows(RuntimeException.class, () -> PdfUtil.getPage(pdfBytes, 4));
+        assertThrows(RuntimeException.class, () -> PdfUtil.addFoldingLines("no pdf".getBytes(), FoldingLineSet.DL));
+
+        // Verify the results
+        assertEquals(0, histograms.getOperation("getPage").getCount());
+        assertEquals(1, histograms.getFailures("getPage").getCount());
+        assertEquals(pdfBytes.length, histograms.getFailures("getPage").getBytesIn());
+        assertEquals(1, histograms.getFailures("addFoldingLines").getCount());
+    }
+
+    @Test
+    void testParallelStampingReportsItsInput() throws Exception {
+        byte[] pdfBytes = Files.readAllBytes(Paths.get("src/test/resources/sample_with_attachments.pdf"));
+        // a plain document without outlines, so that the page ranges are stamped concurrently
+        byte[] plain = PdfUtil.getPages(pdfBytes, Collections.singletonList("1-")).get(0);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        HistogramInstrumentation histograms = new HistogramInstrumentation();
+        Instrumentation.install(histograms);
+
+        try {
+            ParallelStamping parallelStamping = ParallelStamping.builder().executor(executor).threshold(2).rangeSize(2).build();
+            byte[] withLines = PdfUtil.addFoldingLines(PdfSource.of(plain), FoldingLineSet.DL, parallelStamping);
+
+            // Verify the results
+            LatencyHistogram folding = histograms.getOperation("addFoldingLines");
+            assertEquals(1, folding.getCount());
+            assertEquals(plain.length, folding.getBytesIn());
+            assertEquals(withLines.length, folding.getBytesOut());
+            assertEquals(1, histograms.getPhase("addFoldingLines", PdfPhase.READ).getCount());
+            assertEquals(1, histograms.getPhase("addFoldingLines", PdfPhase.WRITE).getCount());
+            // the ranges stamp and write together, there is no separate stamp phase
+            assertEquals(0, histograms.getPhase("addFoldingLines", PdfPhase.STAMP).getCount());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void testNothingIsMeasuredWithoutInstrumentation() {
+        Measurement measurement = Measurement.start("anything");
+
+        // Verify the results
+        assertFalse(measurement.isEnabled());
+        assertSame(measurement, Measurement.start("other"));
+    }
+}
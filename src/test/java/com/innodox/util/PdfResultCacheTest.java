@@ -0,0 +1,115 @@
+package com.innodox.util;
+
+import com.innodox.manipulate.PdfTransform;
+import com.innodox.manipulate.Watermark;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PdfResultCacheTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testRepeatedOperationIsServedFromTheCache() throws IOException {
+        byte[] pdfBytes = Files.readAllBytes(Paths.get("src/test/resources/sample_with_attachments.pdf"));
+        CachedPdfUtil pdfUtil = new CachedPdfUtil(PdfResultCache.builder().build());
+
+        byte[] first = pdfUtil.getPage(pdfBytes, 2);
+        byte[] second = pdfUtil.getPage(pdfBytes.clone(), 2);
+        List<byte[]> chunks = pdfUtil.split(pdfBytes, 2);
+        List<byte[]> cachedChunks = pdfUtil.split(pdfBytes, 2);
+
+        // Verify the results
+        assertArrayEquals(first, second);
+        assertEquals(2, cachedChunks.size());
+        assertArrayEquals(chunks.get(1), cachedChunks.get(1));
+        assertEquals(2, pdfUtil.getCache().getHits());
+        assertEquals(2, pdfUtil.getCache().getMisses());
+    }
+
+    @Test
+    void testModifiedResultDoesNotChangeTheCachedResult() throws IOException {
+        PdfResultCache cache = PdfResultCache.builder().directory(tempDir).build();
+
+        byte[] first = cache.get("a", () -> new byte[]{1, 2, 3});
+        first[0] = 9;
+        byte[] second = cache.get("a", () -> fail("result should be cached"));
+        second[1] = 9;
+        cache.clear();
+        byte[] fromDisk = cache.get("a", () -> fail("result should be on the disk"));
+
+        // Verify the results
+        assertNotSame(first, second);
+        assertArrayEquals(new byte[]{1, 2, 3}, cache.get("a", () -> fail("result should be cached")));
+        assertArrayEquals(new byte[]{1, 2, 3}, fromDisk);
+        assertArrayEquals(new byte[]{1, 2, 3}, Files.readAllBytes(tempDir.resolve("a")));
+    }
+
+    @Test
+    void testLeastRecentlyUsedResultIsEvictedToTheDisk() {
+        PdfResultCache cache = PdfResultCache.builder().maxBytes(10).directory(tempDir).build();
+
+        cache.get("a", () -> new byte[6]);
+        cache.get("b", () -> new byte[6]);
+        byte[] a = cache.get("a", () -> fail("result should be on the disk"));
+
+        // Verify the results
+        assertEquals(6, a.length);
+        assertEquals(2, cache.getEvictions());
+        assertEquals(1, cache.getDiskHits());
+        assertEquals(6, cache.getBytes());
+    }
+
+    @Test
+    void testLeastRecentlyUsedFileIsDeletedFromTheDisk() throws IOException {
+        Files.write(tempDir.resolve("old"), new byte[4]);
+        Files.setLastModifiedTime(tempDir.resolve("old"), FileTime.fromMillis(0));
+        Files.write(tempDir.resolve("partial.tmp"), new byte[4]);
+        PdfResultCache cache = PdfResultCache.builder().maxBytes(0).directory(tempDir).maxDiskBytes(10).build();
+
+        cache.get("a", () -> new byte[4]);
+        cache.get("b", () -> new byte[4]);
+        cache.get("a", () -> fail("result should be on the disk"));
+        cache.get("c", () -> new byte[4]);
+        cache.get("d", () -> new byte[11]);
+
+        // Verify the results
+        assertFalse(Files.exists(tempDir.resolve("old")));
+        assertFalse(Files.exists(tempDir.resolve("b")));
+        assertTrue(Files.exists(tempDir.resolve("a")));
+        assertTrue(Files.exists(tempDir.resolve("c")));
+        assertFalse(Files.exists(tempDir.resolve("d")));
+        assertTrue(Files.exists(tempDir.resolve("partial.tmp")));
+        assertEquals(2, cache.getDiskEvictions());
+        assertEquals(8, cache.getDiskBytes());
+    }
+
+    @Test
+    void testWatermarkKeyDependsOnTheWatermark() throws IOException {
+        byte[] pdfBytes = Files.readAllBytes(Paths.get("src/test/resources/sample_with_attachments.pdf"));
+        PdfResultCache cache = PdfResultCache.builder().build();
+        Watermark draft = Watermark.builder().text("DRAFT").build();
+
+        byte[] first = PdfTransform.get(pdfBytes).withCache(cache).withWatermark(draft).watermark();
+        byte[] second = PdfTransform.get(pdfBytes).withCache(cache).withWatermark(draft).watermark();
+        PdfTransform.get(pdfBytes).withCache(cache).withWatermark(Watermark.builder().text("COPY").build())
+                .watermark();
+
+        // Verify the results
+        assertArrayEquals(first, second);
+        assertEquals(1, cache.getHits());
+        assertEquals(2, cache.getMisses());
+        assertNotEquals(PdfResultCache.key("x", Arrays.asList("ab", "c")), PdfResultCache.key("x", Arrays.asList("a", "bc")));
+    }
+}
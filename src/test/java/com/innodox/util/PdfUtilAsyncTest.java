@@ -0,0 +1,72 @@
+package com.innodox.util;
+
+import com.innodox.manipulate.PdfTransform;
+import com.innodox.manipulate.PdfTransformAsync;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PdfUtilAsyncTest {
+
+    @Test
+    void testAsyncResultsMatchTheBlockingOperations() throws Exception {
+        byte[] pdfBytes = Files.readAllBytes(Paths.get("src/test/resources/sample_with_attachments.pdf"));
+        PdfUtilAsync pdfUtil = new PdfUtilAsync();
+
+        // Verify the results
+        assertEquals(3, pdfUtil.getPageCount(pdfBytes).get().intValue());
+        assertEquals(PdfUtil.getPages(pdfBytes, Arrays.asList("1", "2-3")).size(),
+                pdfUtil.getPages(pdfBytes, Arrays.asList("1", "2-3")).get().size());
+        assertEquals(6, new PdfTransformAsync().merge(PdfTransform.get(pdfBytes).add(pdfBytes))
+                .thenApply(PdfUtil::getPageCount).get().intValue());
+    }
+
+    @Test
+    void testQueuedOperationTimesOutAndIsSkipped() throws InterruptedException {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        CountDownLatch blocked = new CountDownLatch(1);
+        AtomicBoolean ran = new AtomicBoolean();
+        try {
+            AsyncOperations operations = new AsyncOperations(executor, null);
+            operations.supply(() -> {
+                blocked.await();
+                return null;
+            });
+
+            ExecutionException e = assertThrows(ExecutionException.class,
+                    () -> operations.supply(() -> ran.getAndSet(true), Duration.ofMillis(50)).get());
+            blocked.countDown();
+            operations.supply(() -> null).join();
+
+            // Verify the results
+            assertTrue(e.getCause() instanceof TimeoutException);
+            assertFalse(ran.get());
+        } finally {
+            blocked.countDown();
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void testFailureKeepsTheOriginalException() {
+        PdfUtilAsync pdfUtil = new PdfUtilAsync().withTimeout(Duration.ofSeconds(30));
+
+        ExecutionException e = assertThrows(ExecutionException.class,
+                () -> pdfUtil.getPdfAttachments("no pdf".getBytes(), "xml").get());
+
+        // Verify the results
+        assertTrue(e.getCause() instanceof IOException);
+    }
+}